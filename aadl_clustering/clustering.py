@@ -14,6 +14,14 @@ def load_similarity_matrix(csv_file_path):
     df = pd.read_csv(csv_file_path, index_col=0)
     return df.values, df.columns.tolist()
 
+def load_distance_vector(npy_file_path):
+    # <name>_distance.npy: float32 condensed distances written by the similarity stage, names in <name>_names.txt
+    distance_vector = np.load(npy_file_path, mmap_mode='r')
+    names_path = npy_file_path[:-len("_distance.npy")] + "_names.txt"
+    with open(names_path) as f:
+        model_names = [line.rstrip("\n") for line in f]
+    return distance_vector, model_names
+
 def compute_ari(clusters, ground_truth, model_names):
     cluster_df = pd.DataFrame({'Model': model_names, 'Cluster': clusters})
     cluster_df['Model'] = cluster_df['Model'].str.replace('.json', '', regex=True)
@@ -25,7 +33,7 @@ def compute_ari(clusters, ground_truth, model_names):
     return ari, len(set(clusters)), merged_df
 
 def get_wstruct_from_filename(filename):
-    match = re.search(r'_wStruct_([\d.]+)_wModelname_([\d.]+)\.csv', filename)
+    match = re.search(r'_wStruct_([\d.]+)_wModelname_([\d.]+)(?:\.csv|_distance\.npy)', filename)
     if match:
         w_struct = float(match.group(1))
         w_modelname = float(match.group(2))
@@ -122,16 +130,23 @@ def process_all_matrices(input_matrix_folder, validate_csv, linkage_method):
     output_results = []
     best_merged_df = None
     for file in os.listdir(input_matrix_folder):
-        if file.endswith(".csv") and "_wStruct_" in file:
+        if (file.endswith(".csv") or file.endswith("_distance.npy")) and "_wStruct_" in file:
+            # With exportFormat "both" a matrix is written in both formats; it is clustered once, from the .npy
+            if file.endswith(".csv") and os.path.exists(os.path.join(input_matrix_folder, file[:-len(".csv")] + "_distance.npy")):
+                continue
             full_path = os.path.join(input_matrix_folder, file)
             print(f"Processing: {file}")
 
             # Load matrix
-            similarity_matrix, model_names = load_similarity_matrix(full_path)
-            similarity_matrix = np.clip(similarity_matrix, 0.0, 1.0)
-            distance_matrix = 1 - similarity_matrix
-            distance_matrix = (distance_matrix + distance_matrix.T) / 2
-            distance_vector = squareform(distance_matrix, checks=False)
+            if file.endswith("_distance.npy"):
+                # Already clipped and condensed by the similarity stage
+                distance_vector, model_names = load_distance_vector(full_path)
+            else:
+                similarity_matrix, model_names = load_similarity_matrix(full_path)
+                similarity_matrix = np.clip(similarity_matrix, 0.0, 1.0)
+                distance_matrix = 1 - similarity_matrix
+                distance_matrix = (distance_matrix + distance_matrix.T) / 2
+                distance_vector = squareform(distance_matrix, checks=False)
             linkage_matrix = linkage(distance_vector, method = linkage_method) #ward, average, complete, single
 
             # Ground truth
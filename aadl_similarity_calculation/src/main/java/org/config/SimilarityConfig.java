@@ -0,0 +1,535 @@
+package org.config;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Settings of a similarity run, read from config_similarity_measure.json.
+ * <p>
+ * The configuration is loaded once at startup and handed to the similarity engine; it is immutable, so several
+ * runs with different configurations can share the same JVM. Every key of the file can be overridden from the
+ * command line with {@code --key=value}, and {@code --config=path} selects another file.
+ *
+ */
+public final class SimilarityConfig {
+
+    public final static String DEFAULT_CONFIG_PATH = "src/main/resources/config_similarity_measure.json";
+    // The configuration of the model conversion, whose common words are used when the key is not set
+    public final static String COMMON_WORDS_CONFIG_PATH = "src/main/resources/config.json";
+    public final static int DEFAULT_TILE_SIZE = 64;
+
+    private final static Logger logger = LogManager.getLogger(SimilarityConfig.class);
+
+    private static volatile SimilarityConfig defaultConfig;
+
+    private final String xmiFolderPath;
+    private final String jsonFolderPath;
+    private final String compareMode;
+    private final double weightOfStructural;
+    private final double weightOfSemantic;
+    private final String structureSimilarityPath;
+    private final String semanticSimilarityPath;
+    private final String averageSimilarityPath;
+    private final boolean test;
+    private final List<double[]> weightGrid;
+    private final String datatype;
+    private final String ecoreCSVFilePath;
+    private final int tileSize;
+    private final boolean incremental;
+    private final String pairStorePath;
+    private final boolean checkpoint;
+    private final String checkpointPath;
+    private final int checkpointIntervalSeconds;
+    private final boolean resume;
+    private final String matrixStorage;
+    private final String matrixDirectory;
+    private final String matrixPrecision;
+    private final String exportFormat;
+    private final int topK;
+    private final String topKPath;
+    private final String structuralMeasure;
+    private final long mcsTimeBudgetMillis;
+    private final int wlIterations;
+    private final boolean deduplicate;
+    private final String subtreeIndexPath;
+    private final int subtreeMinSize;
+    private final boolean lsh;
+    private final int lshBands;
+    private final int lshRows;
+    private final int lshPathLength;
+    private final String lshPath;
+    private final int lshRecallSample;
+    private final int lshMaxBucketSize;
+    private final List<String> measures;
+    private final String embeddingStorePath;
+    private final String embeddingPrecision;
+    private final List<String> commonWordsToExclude;
+
+    private SimilarityConfig(JsonObject config) {
+        this.xmiFolderPath = config.getString("xmiFolderPath");
+        this.jsonFolderPath = config.getString("jsonFolderPath");
+        this.compareMode = config.getString("compareMode");
+        this.weightOfStructural = config.getJsonNumber("weight_of_structural").doubleValue();
+        this.weightOfSemantic = config.getJsonNumber("weight_of_semantic").doubleValue();
+        this.structureSimilarityPath = config.getString("structureSimilarityPath");
+        this.semanticSimilarityPath = config.getString("semanticSimilarityPath");
+        this.averageSimilarityPath = config.getString("averageSimilarityPath");
+        this.test = config.getBoolean("test");
+        this.weightGrid = Collections.unmodifiableList(readWeightGrid(config));
+        this.datatype = config.getString("datatype", "AADL");
+        this.ecoreCSVFilePath = config.getString("ecoreCSVFilePath", null);
+        this.tileSize = config.getInt("tileSize", DEFAULT_TILE_SIZE);
+        this.incremental = config.getBoolean("incremental", false);
+        this.pairStorePath = config.getString("pairStorePath", "output/pair_store.csv");
+        this.resume = config.getBoolean("resume", false);
+        this.checkpoint = config.getBoolean("checkpoint", false) || resume;
+        this.checkpointPath = config.getString("checkpointPath", "output/checkpoint.bin");
+        this.checkpointIntervalSeconds = config.getInt("checkpointIntervalSeconds", 60);
+        this.matrixStorage = config.getString("matrixStorage", "offheap");
+        this.matrixDirectory = config.getString("matrixDirectory", "output/matrices");
+        this.matrixPrecision = config.getString("matrixPrecision", "double");
+        this.exportFormat = config.getString("exportFormat", "csv");
+        this.topK = config.getInt("topK", 0);
+        this.topKPath = config.getString("topKPath", "output/knn.csv");
+        this.structuralMeasure = config.getString("structuralMeasure", "greedy");
+        this.mcsTimeBudgetMillis = config.containsKey("mcsTimeBudgetMillis") ? config.getJsonNumber("mcsTimeBudgetMillis").longValue() : 1000;
+        this.wlIterations = config.getInt("wlIterations", 3);
+        this.deduplicate = config.getBoolean("deduplicate", true);
+        this.subtreeIndexPath = config.getString("subtreeIndexPath", null);
+        this.subtreeMinSize = config.getInt("subtreeMinSize", 5);
+        this.lsh = config.getBoolean("lsh", false);
+        this.lshBands = config.getInt("lshBands", 32);
+        this.lshRows = config.getInt("lshRows", 4);
+        this.lshPathLength = config.getInt("lshPathLength", 3);
+        this.lshPath = config.getString("lshPath", "output/lsh_pairs.csv");
+        this.lshRecallSample = config.getInt("lshRecallSample", 2000);
+        this.lshMaxBucketSize = config.getInt("lshMaxBucketSize", 1000);
+        this.measures = Collections.unmodifiableList(readMeasures(config));
+        this.embeddingStorePath = config.getString("embeddingStorePath", null);
+        this.embeddingPrecision = config.getString("embeddingPrecision", "float32");
+        this.commonWordsToExclude = Collections.unmodifiableList(readCommonWords(config));
+
+        if (!compareMode.equals("max") && !compareMode.equals("min") && !compareMode.equals("average")) {
+            throw new IllegalArgumentException("Invalid compareMode: " + compareMode);
+        }
+        if (!matrixStorage.equals("offheap") && !matrixStorage.equals("mapped")) {
+            throw new IllegalArgumentException("Invalid matrixStorage: " + matrixStorage);
+        }
+        if (!matrixPrecision.equals("double") && !matrixPrecision.equals("float")) {
+            throw new IllegalArgumentException("Invalid matrixPrecision: " + matrixPrecision);
+        }
+        if (!embeddingPrecision.equals("float32") && !embeddingPrecision.equals("float16") && !embeddingPrecision.equals("int8")) {
+            throw new IllegalArgumentException("Invalid embeddingPrecision: " + embeddingPrecision);
+        }
+        if (!exportFormat.equals("csv") && !exportFormat.equals("npy") && !exportFormat.equals("both")) {
+            throw new IllegalArgumentException("Invalid exportFormat: " + exportFormat);
+        }
+        if (!structuralMeasure.equals("greedy") && !structuralMeasure.equals("mcsplit") && !structuralMeasure.equals("wl")) {
+            throw new IllegalArgumentException("Invalid structuralMeasure: " + structuralMeasure);
+        }
+        if (wlIterations < 0) {
+            throw new IllegalArgumentException("wlIterations must not be negative: " + wlIterations);
+        }
+        if (subtreeMinSize < 1) {
+            throw new IllegalArgumentException("subtreeMinSize must be at least 1: " + subtreeMinSize);
+        }
+        if (lshBands < 1 || lshRows < 1 || lshPathLength < 1) {
+            throw new IllegalArgumentException("lshBands, lshRows and lshPathLength must be at least 1: " + lshBands + ", " + lshRows + ", " + lshPathLength);
+        }
+        if (lshRecallSample < 0) {
+            throw new IllegalArgumentException("lshRecallSample must not be negative: " + lshRecallSample);
+        }
+        if (lshMaxBucketSize < 2) {
+            throw new IllegalArgumentException("lshMaxBucketSize must be at least 2: " + lshMaxBucketSize);
+        }
+        if (measures.isEmpty() || new HashSet<>(measures).size() != measures.size()) {
+            throw new IllegalArgumentException("measures must list at least one measure, each once: " + measures);
+        }
+        if (topK < 0) {
+            throw new IllegalArgumentException("topK must not be negative: " + topK);
+        }
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be at least 1: " + tileSize);
+        }
+    }
+
+    /**
+     * Load the configuration file and apply the command line overrides.
+     *
+     * @param args the program arguments, {@code --key=value} each; {@code --key} alone stands for {@code --key=true}
+     * @return the configuration of the run
+     * @throws IOException if the configuration file cannot be read
+     */
+    public static SimilarityConfig fromArgs(String[] args) throws IOException {
+        String configPath = DEFAULT_CONFIG_PATH;
+        List<String[]> overrides = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Arguments must be in the form --key=value: " + arg);
+            }
+            if (!arg.contains("=")) {
+                arg = arg + "=true";
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (key.equals("config")) {
+                configPath = value;
+            } else {
+                overrides.add(new String[]{key, value});
+            }
+        }
+
+        JsonObject config = readFile(configPath);
+        if (overrides.isEmpty()) {
+            return new SimilarityConfig(config);
+        }
+        JsonObjectBuilder builder = Json.createObjectBuilder(config);
+        for (String[] override : overrides) {
+            logger.info("Configuration override: " + override[0] + " = " + override[1]);
+            builder.add(override[0], parseValue(config.get(override[0]), override[1]));
+        }
+        return new SimilarityConfig(builder.build());
+    }
+
+    public static SimilarityConfig load(String configPath) throws IOException {
+        return new SimilarityConfig(readFile(configPath));
+    }
+
+    public static SimilarityConfig fromJson(JsonObject config) {
+        return new SimilarityConfig(config);
+    }
+
+    // The configuration of DEFAULT_CONFIG_PATH, read on first use, for callers that are not handed one
+    public static SimilarityConfig getDefault() throws IOException {
+        SimilarityConfig config = defaultConfig;
+        if (config == null) {
+            synchronized (SimilarityConfig.class) {
+                config = defaultConfig;
+                if (config == null) {
+                    config = load(DEFAULT_CONFIG_PATH);
+                    defaultConfig = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    private static JsonObject readFile(String configPath) throws IOException {
+        try (FileReader fileReader = new FileReader(configPath);
+             JsonReader jsonReader = Json.createReader(fileReader)) {
+            return jsonReader.readObject();
+        } catch (IOException e) {
+            logger.error("Error reading configuration file: " + configPath, e);
+            throw e;
+        }
+    }
+
+    // Command line values take the type of the value they replace; new keys are parsed as JSON, or kept as strings. A
+    // list of values separated by commas, or any value replacing an array, is an array
+    static JsonValue parseValue(JsonValue current, String value) {
+        if (current != null && current.getValueType() == JsonValue.ValueType.STRING) {
+            return Json.createValue(value);
+        }
+        try (JsonReader reader = Json.createReader(new StringReader("[" + value + "]"))) {
+            JsonArray values = reader.readArray();
+            if (values.size() == 1 && (current == null || current.getValueType() != JsonValue.ValueType.ARRAY)) {
+                return values.get(0);
+            }
+            return values;
+        } catch (RuntimeException e) {
+            return Json.createValue(value);
+        }
+    }
+
+    // "weight_grid" lists the structural weights of the test sweep, by default 0.0, 0.1, ..., 1.0
+    private static List<double[]> readWeightGrid(JsonObject config) {
+        List<double[]> grid = new ArrayList<>();
+        JsonValue weights = config.get("weight_grid");
+        if (weights instanceof JsonNumber) {
+            double wStruct = ((JsonNumber) weights).doubleValue();
+            grid.add(new double[]{wStruct, 1.0 - wStruct});
+        } else if (weights != null) {
+            for (JsonNumber value : config.getJsonArray("weight_grid").getValuesAs(JsonNumber.class)) {
+                double wStruct = value.doubleValue();
+                grid.add(new double[]{wStruct, 1.0 - wStruct});
+            }
+        } else {
+            for (int i = 0; i <= 10; i++) {
+                double wStruct = i * 0.1;
+                double wSemantic = 1.0 - wStruct;
+                wStruct = Math.round(wStruct * 10.0) / 10.0;
+                grid.add(new double[]{wStruct, wSemantic});
+            }
+        }
+        return grid;
+    }
+
+    // "measures" lists the measures of the matrix mode, by default structural and semantic; on the command line the
+    // names can also be given separated by commas
+    private static List<String> readMeasures(JsonObject config) {
+        List<String> measures = new ArrayList<>();
+        JsonValue value = config.get("measures");
+        if (value == null) {
+            measures.add("structural");
+            measures.add("semantic");
+        } else if (value.getValueType() == JsonValue.ValueType.STRING) {
+            for (String name : ((JsonString) value).getString().split(",")) {
+                if (!name.isBlank()) {
+                    measures.add(name.trim());
+                }
+            }
+        } else {
+            for (JsonString name : config.getJsonArray("measures").getValuesAs(JsonString.class)) {
+                measures.add(name.getString());
+            }
+        }
+        return measures;
+    }
+
+    // The same key as in config.json, a JSON array or a comma separated string; when it is not set, the words of
+    // COMMON_WORDS_CONFIG_PATH
+    private static List<String> readCommonWords(JsonObject config) {
+        JsonValue value = config.get("common_words_to_exclude");
+        if (value == null) {
+            if (!new File(COMMON_WORDS_CONFIG_PATH).isFile()) {
+                logger.warn(COMMON_WORDS_CONFIG_PATH + " not found, no common words are excluded");
+                return new ArrayList<>();
+            }
+            try {
+                value = readFile(COMMON_WORDS_CONFIG_PATH).get("common_words_to_exclude");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (value == null) {
+                return new ArrayList<>();
+            }
+        }
+        return parseCommonWords(value);
+    }
+
+    static List<String> parseCommonWords(JsonValue value) {
+        List<String> words = new ArrayList<>();
+        if (value.getValueType() == JsonValue.ValueType.STRING) {
+            for (String word : ((JsonString) value).getString().split(",")) {
+                if (!word.isBlank()) {
+                    words.add(word.trim());
+                }
+            }
+        } else if (value.getValueType() == JsonValue.ValueType.ARRAY) {
+            for (JsonValue word : value.asJsonArray()) {
+                if (word.getValueType() != JsonValue.ValueType.STRING) {
+                    throw new IllegalArgumentException("common_words_to_exclude must only hold strings: " + value);
+                }
+                words.add(((JsonString) word).getString());
+            }
+        } else {
+            throw new IllegalArgumentException("common_words_to_exclude must be a string or an array: " + value);
+        }
+        return words;
+    }
+
+    public String getXmiFolderPath() {
+        return xmiFolderPath;
+    }
+
+    public String getJsonFolderPath() {
+        return jsonFolderPath;
+    }
+
+    public String getCompareMode() {
+        return compareMode;
+    }
+
+    public double getWeightOfStructural() {
+        return weightOfStructural;
+    }
+
+    public double getWeightOfSemantic() {
+        return weightOfSemantic;
+    }
+
+    public String getStructureSimilarityPath() {
+        return structureSimilarityPath;
+    }
+
+    public String getSemanticSimilarityPath() {
+        return semanticSimilarityPath;
+    }
+
+    public String getAverageSimilarityPath() {
+        return averageSimilarityPath;
+    }
+
+    public boolean isTest() {
+        return test;
+    }
+
+    // (structural, semantic) weight pairs of the test sweep; the arrays must not be modified
+    public List<double[]> getWeightGrid() {
+        return weightGrid;
+    }
+
+    public String getDatatype() {
+        return datatype;
+    }
+
+    public String getEcoreCSVFilePath() {
+        return ecoreCSVFilePath;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public String getPairStorePath() {
+        return pairStorePath;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+
+    // Continue the run recorded in the checkpoint instead of starting over
+    public boolean isResume() {
+        return resume;
+    }
+
+    // "offheap" (direct memory) or "mapped" (files under matrixDirectory)
+    public String getMatrixStorage() {
+        return matrixStorage;
+    }
+
+    public String getMatrixDirectory() {
+        return matrixDirectory;
+    }
+
+    // "double", or "float" to halve the memory of the matrices
+    public String getMatrixPrecision() {
+        return matrixPrecision;
+    }
+
+    // "csv", "npy" or "both"
+    public String getExportFormat() {
+        return exportFormat;
+    }
+
+    // Number of nearest neighbours kept per model instead of the full matrices, 0 for the full matrices
+    public int getTopK() {
+        return topK;
+    }
+
+    public String getTopKPath() {
+        return topKPath;
+    }
+
+    // "greedy" category matching, "mcsplit" for the exact maximum common induced subgraph, or "wl" for the
+    // Weisfeiler-Lehman subtree kernel
+    public String getStructuralMeasure() {
+        return structuralMeasure;
+    }
+
+    // Time limit of each exact MCS, after which the best subgraph found is used; 0 for no limit
+    public long getMcsTimeBudgetMillis() {
+        return mcsTimeBudgetMillis;
+    }
+
+    // Relabelling rounds of the Weisfeiler-Lehman features
+    public int getWlIterations() {
+        return wlIterations;
+    }
+
+    // Whether models with the same graph and names are scored once, through one representative
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    // CSV of the component subtrees shared by several models, null for none
+    public String getSubtreeIndexPath() {
+        return subtreeIndexPath;
+    }
+
+    // Smallest subtree, in nodes, kept in the subtree index
+    public int getSubtreeMinSize() {
+        return subtreeMinSize;
+    }
+
+    // Only the candidate pairs of the LSH index are scored, into a sparse matrix
+    public boolean isLsh() {
+        return lsh;
+    }
+
+    public int getLshBands() {
+        return lshBands;
+    }
+
+    public int getLshRows() {
+        return lshRows;
+    }
+
+    // Nodes of the category paths up the containment tree used as shingles
+    public int getLshPathLength() {
+        return lshPathLength;
+    }
+
+    public String getLshPath() {
+        return lshPath;
+    }
+
+    // Model pairs scored exactly to estimate the recall of the LSH candidates, 0 for none
+    public int getLshRecallSample() {
+        return lshRecallSample;
+    }
+
+    // LSH buckets with more models are skipped, so one band shared by many models does not add all their pairs
+    public int getLshMaxBucketSize() {
+        return lshMaxBucketSize;
+    }
+
+    public List<String> getMeasures() {
+        return measures;
+    }
+
+    public String getEmbeddingStorePath() {
+        return embeddingStorePath;
+    }
+
+    // The precision of the word vectors in the cache, the exported embedding store and the all-pairs semantic product
+    public String getEmbeddingPrecision() {
+        return embeddingPrecision;
+    }
+
+    // Words left out of the names of the models by the semantic measure, besides its own keywords
+    public List<String> getCommonWordsToExclude() {
+        return commonWordsToExclude;
+    }
+}
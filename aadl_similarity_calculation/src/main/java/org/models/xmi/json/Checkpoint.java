@@ -0,0 +1,192 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.models.xmi.json.matrix.SimilarityMatrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only checkpoint of the tiles completed by a {@link PairScheduler} run.
+ * <p>
+ * Each completed tile is appended with the exact bits of the similarities of its pairs in every matrix of the run,
+ * and the file is flushed at most every {@code flushIntervalMillis}. Resuming reads the completed tiles back into
+ * the matrices and marks them done, so only the remaining tiles are computed and the final matrices are identical
+ * to those of an uninterrupted run. A tile cut short by a kill is ignored and computed again.
+ */
+public class Checkpoint implements PairScheduler.TileObserver, Closeable {
+    private final static Logger logger = LogManager.getLogger(Checkpoint.class);
+
+    private final static int MAGIC = 0x41414350;
+
+    private final int size;
+    private final int tileSize;
+    private final SimilarityMatrix[] matrices;
+    private final long flushIntervalMillis;
+    private final Set<Long> completedTiles = ConcurrentHashMap.newKeySet();
+    private DataOutputStream out;
+    private long lastFlush;
+
+    private Checkpoint(int size, int tileSize, SimilarityMatrix[] matrices, long flushIntervalMillis) {
+        this.size = size;
+        this.tileSize = tileSize;
+        this.matrices = matrices;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Open the checkpoint of a run. When resuming, the tiles already in the file are loaded into the matrices;
+     * otherwise the file is started again.
+     *
+     * @param path        the checkpoint file
+     * @param fingerprint identifies the corpus and the measure parameters, a checkpoint of another run is refused
+     * @param resume      whether to continue from the tiles already in the file
+     * @param matrices    the matrices of the run, one per measure, in the same order on every run
+     * @return the opened checkpoint
+     * @throws IOException if the file cannot be read or written, or belongs to another run
+     */
+    public static Checkpoint open(String path, String fingerprint, boolean resume, int size, int tileSize,
+                                  SimilarityMatrix[] matrices, long flushIntervalMillis) throws IOException {
+        File file = new File(path);
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create the directory of the checkpoint: " + path);
+        }
+        Checkpoint checkpoint = new Checkpoint(size, tileSize, matrices, flushIntervalMillis);
+        if (resume && file.exists()) {
+            long validLength = checkpoint.load(file, fingerprint);
+            // Drop a tile that was only partly written, then keep appending after the last complete one
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+            checkpoint.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            logger.info("Resuming from " + path + ": " + checkpoint.completedTiles.size() + " tiles already done");
+        } else {
+            if (resume) {
+                logger.warn("No checkpoint to resume from at " + path + ", starting from scratch");
+            }
+            checkpoint.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+            checkpoint.out.writeInt(MAGIC);
+            checkpoint.out.writeUTF(fingerprint);
+            checkpoint.out.writeInt(size);
+            checkpoint.out.writeInt(tileSize);
+            checkpoint.out.writeInt(matrices.length);
+            checkpoint.out.flush();
+        }
+        return checkpoint;
+    }
+
+    // Reads the complete tiles of the file into the matrices and returns the length of the valid part of the file
+    private long load(File file, String fingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            String storedFingerprint = in.readUTF();
+            int storedSize = in.readInt();
+            int storedTileSize = in.readInt();
+            int storedMatrices = in.readInt();
+            if (!storedFingerprint.equals(fingerprint) || storedSize != size || storedTileSize != tileSize || storedMatrices != matrices.length) {
+                throw new IOException("The checkpoint " + file + " was written by a run on other models or with other parameters");
+            }
+            long validLength = 4 + 2 + storedFingerprint.getBytes(StandardCharsets.UTF_8).length + 4 + 4 + 4;
+            while (true) {
+                int rowBlock;
+                try {
+                    rowBlock = in.readInt();
+                } catch (EOFException e) {
+                    return validLength;
+                }
+                try {
+                    int colBlock = in.readInt();
+                    int count = in.readInt();
+                    int[] rows = new int[count];
+                    int[] cols = new int[count];
+                    double[][] values = new double[count][matrices.length];
+                    for (int k = 0; k < count; k++) {
+                        rows[k] = in.readInt();
+                        cols[k] = in.readInt();
+                        for (int m = 0; m < matrices.length; m++) {
+                            values[k][m] = Double.longBitsToDouble(in.readLong());
+                        }
+                    }
+                    // Only a complete tile is written to the matrices
+                    for (int k = 0; k < count; k++) {
+                        for (int m = 0; m < matrices.length; m++) {
+                            matrices[m].set(rows[k], cols[k], values[k][m]);
+                        }
+                    }
+                    completedTiles.add(tileKey(rowBlock, colBlock));
+                    validLength += 12 + (long) count * (8 + 8L * matrices.length);
+                } catch (EOFException e) {
+                    logger.warn("Ignoring the last tile of the checkpoint, it was not completely written");
+                    return validLength;
+                }
+            }
+        }
+    }
+
+    private static long tileKey(int rowBlock, int colBlock) {
+        return ((long) rowBlock << 32) | (colBlock & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public boolean isDone(int rowBlock, int colBlock) {
+        return completedTiles.contains(tileKey(rowBlock, colBlock));
+    }
+
+    // Called by the worker that ran the tile, so it reads the values that worker wrote
+    @Override
+    public void tileDone(int rowBlock, int colBlock) {
+        int rowStart = rowBlock * tileSize;
+        int rowEnd = Math.min(rowStart + tileSize, size);
+        int colStart = colBlock * tileSize;
+        int colEnd = Math.min(colStart + tileSize, size);
+        int count = 0;
+        for (int i = rowStart; i < rowEnd; i++) {
+            count += Math.max(0, colEnd - Math.max(i, colStart));
+        }
+        try {
+            synchronized (this) {
+                out.writeInt(rowBlock);
+                out.writeInt(colBlock);
+                out.writeInt(count);
+                for (int i = rowStart; i < rowEnd; i++) {
+                    for (int j = Math.max(i, colStart); j < colEnd; j++) {
+                        out.writeInt(i);
+                        out.writeInt(j);
+                        for (SimilarityMatrix matrix : matrices) {
+                            out.writeLong(Double.doubleToRawLongBits(matrix.get(i, j)));
+                        }
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= flushIntervalMillis) {
+                    out.flush();
+                    lastFlush = now;
+                }
+            }
+            completedTiles.add(tileKey(rowBlock, colBlock));
+        } catch (IOException e) {
+            logger.error("Error writing the checkpoint of tile " + rowBlock + "," + colBlock, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
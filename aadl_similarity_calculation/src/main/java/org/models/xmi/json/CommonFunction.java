@@ -19,6 +19,11 @@ public class CommonFunction {
 
     public static Node createNode(JsonObject jsonObject) {
         String name = jsonObject.getString("name");
+        return new Node(name, resolveCategory(jsonObject));
+    }
+
+    // The category of a component or feature instance, from its "category" or else from the type of its feature
+    public static Node.Category resolveCategory(JsonObject jsonObject) {
         String category = jsonObject.getString("category", "unknown");
 
         switch (category) {
@@ -62,7 +67,7 @@ public class CommonFunction {
         }*/
 
 
-        return new Node(name, Node.Category.valueOf(category));
+        return Node.Category.valueOf(category);
     }
 
     static void writeToFile(String fileName, String content) {
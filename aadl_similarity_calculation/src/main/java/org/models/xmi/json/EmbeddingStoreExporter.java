@@ -0,0 +1,202 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.config.SimilarityConfig;
+import org.models.xmi.json.similarityMeasure.EmbeddingPrecision;
+import org.models.xmi.json.similarityMeasure.EmbeddingStore;
+import org.models.xmi.json.similarityMeasure.FastTextModel;
+import org.models.xmi.json.similarityMeasure.SemanticContext;
+import org.models.xmi.json.similarityMeasure.SemanticMeasure;
+import org.models.xmi.json.similarityMeasure.SemanticSimilarityFastText;
+import org.models.xmi.json.similarityMeasure.WordVectors;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Exports the vectors of the tokens of the models in "jsonFolderPath" from the fastText model to the embedding store
+ * at "embeddingStorePath", which later runs read instead of loading the model. The models must have been converted
+ * to JSON by a previous run. The rows of the character n-grams of the tokens are exported too, so the vectors of the
+ * names of models added later are approximated from the n-grams they share with the exported ones; export the store
+ * again to get their exact vectors.
+ * <p>
+ * The vectors are written in "embeddingPrecision", and a calibration report next to the store compares the semantic
+ * similarities of the models in each precision with float32, to choose one.
+ */
+public class EmbeddingStoreExporter {
+    private final static Logger logger = LogManager.getLogger(EmbeddingStoreExporter.class);
+
+    // Model pairs compared by the calibration, sampled when the corpus has more
+    private static final int CALIBRATION_PAIRS = 1_000_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SimilarityConfig config = SimilarityConfig.fromArgs(args);
+        if (config.getEmbeddingStorePath() == null) {
+            logger.error("Set embeddingStorePath to the file to export the vectors to");
+            return;
+        }
+        // The tokens must be the ones the runs split the names into
+        SemanticContext context = new SemanticContext(FastTextModel.open(SemanticSimilarityFastText.FAST_TEXT_MODEL_PATH),
+                EmbeddingPrecision.FLOAT32, config.getCommonWordsToExclude());
+        List<File> files = Main.listFiles(config.getJsonFolderPath());
+        ModelCorpus corpus = ModelCorpus.load(files, config);
+        export(corpus, context, config.getEmbeddingStorePath(), EmbeddingPrecision.of(config.getEmbeddingPrecision()));
+    }
+
+    // Writes the vectors of every token of the models of the corpus that has one in the word vectors of the context,
+    // then the calibration report
+    public static void export(ModelCorpus corpus, SemanticContext context, String path, EmbeddingPrecision precision) throws IOException {
+        WordVectors source = context.getWordVectors();
+        TreeSet<String> tokens = new TreeSet<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            if (corpus.get(i).isLoaded()) {
+                tokens.addAll(context.tokens(corpus.get(i).getNameList()));
+            }
+        }
+        Map<String, float[]> vectors = new HashMap<>();
+        for (String token : tokens) {
+            float[] vector = source.vector(token);
+            if (vector.length > 0) {
+                vectors.put(token, vector);
+            }
+        }
+        EmbeddingStore.Subwords subwords = source instanceof FastTextModel model ? subwords(model, tokens) : null;
+        EmbeddingStore.write(path, vectors, source.dimension(), subwords, precision);
+        logger.info("Exported the " + precision + " vectors of " + vectors.size() + " tokens of " + corpus.size() + " models and "
+                + (subwords == null ? 0 : subwords.rows().size()) + " n-grams to " + path
+                + " (" + new File(path).length() / 1024 + " KB)");
+
+        String basePath = path.endsWith(".bin") ? path.substring(0, path.length() - 4) : path;
+        calibrate(corpus, context, vectors, source.dimension(), basePath + "_calibration.csv");
+    }
+
+    /*
+     * Writes, for each precision, how close the token vectors are to the float32 ones, and the mean and largest
+     * difference of the semantic similarities of the model pairs with the float32 similarities, as computed by the
+     * semantic measure in that precision. A uniform sample of distinct pairs is compared, or all the pairs when there
+     * are fewer than the sample.
+     */
+    static void calibrate(ModelCorpus corpus, SemanticContext context, Map<String, float[]> vectors, int dimension, String reportPath) throws IOException {
+        List<Integer> loaded = new ArrayList<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            if (corpus.get(i).isLoaded()) {
+                loaded.add(i);
+            }
+        }
+        long allPairs = (long) loaded.size() * (loaded.size() - 1) / 2;
+        List<int[]> sample = new ArrayList<>();
+        if (allPairs <= CALIBRATION_PAIRS) {
+            for (int i = 0; i < loaded.size(); i++) {
+                for (int j = i + 1; j < loaded.size(); j++) {
+                    sample.add(new int[]{i, j});
+                }
+            }
+        } else {
+            // Distinct pairs, so that none is counted twice
+            Set<Long> sampled = new HashSet<>();
+            Random random = new Random(42);
+            while (sample.size() < CALIBRATION_PAIRS) {
+                int i = random.nextInt(loaded.size());
+                int j = random.nextInt(loaded.size());
+                if (i != j && sampled.add(((long) Math.min(i, j) << 32) | Math.max(i, j))) {
+                    sample.add(new int[]{Math.min(i, j), Math.max(i, j)});
+                }
+            }
+        }
+
+        SemanticMeasure reference = new SemanticMeasure(context, EmbeddingPrecision.FLOAT32);
+        float[][] referenceModels = modelVectors(corpus, context, loaded, vectors, reference);
+        double[] referenceSimilarities = new double[sample.size()];
+        IntStream.range(0, sample.size()).parallel().forEach(k ->
+                referenceSimilarities[k] = reference.score(referenceModels[sample.get(k)[0]], referenceModels[sample.get(k)[1]]));
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath))) {
+            writer.write("precision,bytesPerVector,memoryRatio,tokens,meanTokenCosine,minTokenCosine,pairs,meanAbsError,maxAbsError");
+            writer.newLine();
+            for (EmbeddingPrecision precision : EmbeddingPrecision.values()) {
+                Map<String, float[]> rounded = new HashMap<>();
+                double cosineSum = 0.0;
+                double minCosine = 1.0;
+                for (Map.Entry<String, float[]> entry : vectors.entrySet()) {
+                    float[] vector = precision.round(entry.getValue());
+                    rounded.put(entry.getKey(), vector);
+                    double cosine = cosine(entry.getValue(), vector);
+                    cosineSum += cosine;
+                    minCosine = Math.min(minCosine, cosine);
+                }
+
+                SemanticMeasure measure = new SemanticMeasure(context, precision);
+                float[][] models = modelVectors(corpus, context, loaded, rounded, measure);
+                double[] errors = new double[sample.size()];
+                IntStream.range(0, sample.size()).parallel().forEach(k ->
+                        errors[k] = Math.abs(measure.score(models[sample.get(k)[0]], models[sample.get(k)[1]]) - referenceSimilarities[k]));
+                double meanError = 0.0;
+                double maxError = 0.0;
+                for (double error : errors) {
+                    meanError += error;
+                    maxError = Math.max(maxError, error);
+                }
+                meanError = errors.length == 0 ? 0.0 : meanError / errors.length;
+                double meanCosine = vectors.isEmpty() ? 1.0 : cosineSum / vectors.size();
+                double memoryRatio = (double) EmbeddingPrecision.FLOAT32.bytes(dimension) / precision.bytes(dimension);
+
+                writer.write(precision + "," + precision.bytes(dimension) + "," + memoryRatio + "," + vectors.size() + ","
+                        + meanCosine + "," + minCosine + "," + sample.size() + "," + meanError + "," + maxError);
+                writer.newLine();
+                logger.info(precision + ": " + precision.bytes(dimension) + " bytes per vector, mean semantic similarity error "
+                        + meanError + ", largest " + maxError + " over " + sample.size() + " model pairs");
+            }
+        }
+        logger.info("Saved " + reportPath);
+    }
+
+    // The model vectors of the loaded models, as the measure prepares them from these token vectors
+    private static float[][] modelVectors(ModelCorpus corpus, SemanticContext context, List<Integer> loaded, Map<String, float[]> vectors, SemanticMeasure measure) {
+        float[] none = new float[0];
+        float[][] models = new float[loaded.size()][];
+        IntStream.range(0, loaded.size()).parallel().forEach(i -> models[i] = measure.round(
+                context.normalizedModelVector(corpus.get(loaded.get(i)).getNameList(), token -> vectors.getOrDefault(token, none))));
+        return models;
+    }
+
+    // 1 for zero vectors, whose rounding is exact
+    private static double cosine(float[] vector1, float[] vector2) {
+        double dot = 0.0;
+        double norm1 = 0.0;
+        double norm2 = 0.0;
+        for (int i = 0; i < vector1.length; i++) {
+            dot += (double) vector1[i] * vector2[i];
+            norm1 += (double) vector1[i] * vector1[i];
+            norm2 += (double) vector2[i] * vector2[i];
+        }
+        return norm1 == 0.0 || norm2 == 0.0 ? 1.0 : dot / Math.sqrt(norm1 * norm2);
+    }
+
+    // The rows of the n-gram buckets of the tokens that were kept in the model
+    private static EmbeddingStore.Subwords subwords(FastTextModel model, TreeSet<String> tokens) {
+        Map<Integer, float[]> rows = new HashMap<>();
+        for (String token : tokens) {
+            for (int bucket : FastTextModel.subwordBuckets(token, model.getMinn(), model.getMaxn(), model.getBucket())) {
+                int row = model.bucketRow(bucket);
+                if (row >= 0 && !rows.containsKey(bucket)) {
+                    float[] vector = new float[model.dimension()];
+                    model.row(row, vector);
+                    rows.put(bucket, vector);
+                }
+            }
+        }
+        return new EmbeddingStore.Subwords(model.getMinn(), model.getMaxn(), model.getBucket(), rows);
+    }
+}
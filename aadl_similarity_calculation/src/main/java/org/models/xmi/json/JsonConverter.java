@@ -18,6 +18,11 @@ public class JsonConverter {
     private final static Logger logger = LogManager.getLogger(org.discover.arch.model.Main.class);
 
     static public void ConvertToJson(String xmiFolderPath, String jsonFolderPath) throws IOException {
+        ConvertToJson(xmiFolderPath, jsonFolderPath, false);
+    }
+
+    // When incremental, an XMI file is converted only if its JSON file is missing or older than it
+    static public void ConvertToJson(String xmiFolderPath, String jsonFolderPath, boolean incremental) throws IOException {
         Path path = Paths.get(jsonFolderPath);
         //create directory if not exists
         if (!Files.exists(path)) {
@@ -34,6 +39,11 @@ public class JsonConverter {
             // Loop through all the files in the folder
             for (File file : filesXmi) {
                 if (file.isFile()) {
+                    File jsonFile = new File(jsonFolderPath, file.getName().replace(".aaxl2", ".json"));
+                    if (incremental && jsonFile.exists() && jsonFile.lastModified() >= file.lastModified()) {
+                        logger.debug("Up to date: " + jsonFile.getName());
+                        continue;
+                    }
                     // Read the XML file
                     String xml = new String(Files.readAllBytes(file.toPath()));
                     logger.info("Converting " + file.getName() + " to JSON");
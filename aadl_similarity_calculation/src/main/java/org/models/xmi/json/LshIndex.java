@@ -0,0 +1,87 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.models.xmi.json.similarityMeasure.MinHashSignature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locality-sensitive hashing of MinHash signatures by banding: the signatures are cut into {@code bands} bands of
+ * {@code rows} values, and two models become a candidate pair when all the values of one of their bands agree.
+ * A pair with shingle similarity s is found with probability 1 - (1 - s^rows)^bands, so the pairs above roughly
+ * (1 / bands)^(1 / rows) are kept and the others mostly never meet.
+ * <p>
+ * A bucket holding more than {@code maxBucketSize} models, as a band shared by a large family of look-alike models
+ * can, would alone add a quadratic number of pairs; it is skipped and logged, its models only meeting in other bands.
+ */
+public class LshIndex {
+    private final static Logger logger = LogManager.getLogger(LshIndex.class);
+
+    // Candidate pairs (i << 32 | j), i < j, sorted
+    private final long[] candidates;
+
+    private LshIndex(long[] candidates) {
+        this.candidates = candidates;
+    }
+
+    public static LshIndex build(MinHashSignature[] signatures, int bands, int rows, int maxBucketSize) {
+        Set<Long> pairs = new HashSet<>();
+        int skippedBuckets = 0;
+        long skippedPairs = 0;
+        int largestBucket = 0;
+        for (int band = 0; band < bands; band++) {
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < signatures.length; i++) {
+                if (signatures[i] != null) {
+                    buckets.computeIfAbsent(signatures[i].band(band * rows, (band + 1) * rows), key -> new ArrayList<>()).add(i);
+                }
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                if (bucket.size() > maxBucketSize) {
+                    skippedBuckets++;
+                    skippedPairs += (long) bucket.size() * (bucket.size() - 1) / 2;
+                    largestBucket = Math.max(largestBucket, bucket.size());
+                    continue;
+                }
+                for (int a = 0; a < bucket.size(); a++) {
+                    for (int b = a + 1; b < bucket.size(); b++) {
+                        pairs.add(((long) bucket.get(a) << 32) | bucket.get(b));
+                    }
+                }
+            }
+        }
+        if (skippedBuckets > 0) {
+            logger.warn("LSH: skipped " + skippedBuckets + " buckets of more than " + maxBucketSize + " models, the largest of "
+                    + largestBucket + ", with " + skippedPairs + " pairs; raise lshMaxBucketSize or lshRows to score them");
+        }
+        long[] candidates = pairs.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(candidates);
+        return new LshIndex(candidates);
+    }
+
+    public int candidateCount() {
+        return candidates.length;
+    }
+
+    // First model of the k-th candidate pair
+    public int first(int k) {
+        return (int) (candidates[k] >>> 32);
+    }
+
+    // Second model of the k-th candidate pair, above the first
+    public int second(int k) {
+        return (int) candidates[k];
+    }
+
+    public boolean isCandidate(int i, int j) {
+        long pair = i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+        return Arrays.binarySearch(candidates, pair) >= 0;
+    }
+}
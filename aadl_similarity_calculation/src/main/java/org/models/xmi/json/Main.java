@@ -2,17 +2,32 @@ package org.models.xmi.json;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.config.SimilarityConfig;
+import org.models.xmi.json.matrix.FanOutSimilarityMatrix;
+import org.models.xmi.json.matrix.NpyWriter;
+import org.models.xmi.json.matrix.PackedSimilarityMatrix;
+import org.models.xmi.json.matrix.SimilarityMatrix;
+import org.models.xmi.json.matrix.SimilarityMatrixView;
+import org.models.xmi.json.matrix.WeightedSimilarityMatrix;
+import org.models.xmi.json.similarityMeasure.EmbeddingStore;
+import org.models.xmi.json.similarityMeasure.MinHashSignature;
+import org.models.xmi.json.similarityMeasure.SemanticContext;
+import org.models.xmi.json.similarityMeasure.SemanticMeasure;
 import org.models.xmi.json.similarityMeasure.Similarity;
+import org.models.xmi.json.similarityMeasure.SimilarityMeasure;
+import org.models.xmi.json.similarityMeasure.SimilarityMeasures;
+import org.models.xmi.json.similarityMeasure.StructuralMeasure;
 
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * @author Davide Soldati
@@ -23,19 +38,20 @@ public class Main {
     public static void main(String[] args) throws IOException, InterruptedException {
         long startTime = System.currentTimeMillis();
 
-        JsonObject config = loadConfiguration("src/main/resources/config_similarity_measure.json");
-        String xmiFolderPath = config.getString("xmiFolderPath");
-        String jsonFolderPath = config.getString("jsonFolderPath");
-        String structureSimilarityPath = config.getString("structureSimilarityPath");
-        String semanticSimilarityPath = config.getString("semanticSimilarityPath");
-        String averageSimilarityPath = config.getString("averageSimilarityPath");
+        // Read once, then handed to the similarity engine; any key can be overridden with --key=value
+        SimilarityConfig config = SimilarityConfig.fromArgs(args);
+        String xmiFolderPath = config.getXmiFolderPath();
+        String jsonFolderPath = config.getJsonFolderPath();
+        String structureSimilarityPath = config.getStructureSimilarityPath();
+        String semanticSimilarityPath = config.getSemanticSimilarityPath();
+        String averageSimilarityPath = config.getAverageSimilarityPath();
 
         String[] paths = {
-                config.getString("xmiFolderPath"),
-                config.getString("jsonFolderPath"),
-                config.getString("structureSimilarityPath"),
-                config.getString("semanticSimilarityPath"),
-                config.getString("averageSimilarityPath")
+                xmiFolderPath,
+                jsonFolderPath,
+                structureSimilarityPath,
+                semanticSimilarityPath,
+                averageSimilarityPath
         };
 
 
@@ -89,9 +105,9 @@ public class Main {
             }
         }
 
-        double weight_structural = config.getJsonNumber("weight_of_structural").doubleValue();
-        double weight_semantic = config.getJsonNumber("weight_of_semantic").doubleValue();
-        boolean test = config.getBoolean("test");
+        double weight_structural = config.getWeightOfStructural();
+        double weight_semantic = config.getWeightOfSemantic();
+        boolean test = config.isTest();
 
         if (weight_structural + weight_semantic != 1 && !test) {
             logger.error("The sum of the weights must be equal to 1");
@@ -111,11 +127,14 @@ public class Main {
         logger.info("Checking XMI folder path: " + xmiFolder.getAbsolutePath());
 
         File jsonFolder = new File(jsonFolderPath);
-        //delete all files in the folder
+        //delete all files in the folder, or in incremental mode only those whose XMI file is gone
         if (jsonFolder.exists()) {
             File[] files = jsonFolder.listFiles();
             if (files != null) {
                 for (File file : files) {
+                    if (config.isIncremental() && new File(xmiFolder, file.getName().replace(".json", ".aaxl2")).exists()) {
+                        continue;
+                    }
                     if (!file.delete()) {
                         logger.error("Failed to delete file: " + file.getName());
                     }
@@ -131,7 +150,7 @@ public class Main {
             }
         }
 
-        JsonConverter.ConvertToJson(xmiFolderPath, jsonFolderPath);
+        JsonConverter.ConvertToJson(xmiFolderPath, jsonFolderPath, config.isIncremental());
         long endTime = System.currentTimeMillis();
         logger.info("Time taken to convert XMI to JSON: " + (endTime - startTime) + " ms");
 
@@ -151,54 +170,136 @@ public class Main {
         System.out.println("Number of files: " + numFiles);
         logger.info("Number of files: " + numFiles);
 
-        double[][] graphSimilarityMatrix = new double[numFiles][numFiles];
-        double[][] semanticSimilarityMatrix = new double[numFiles][numFiles];
+        // Each model is parsed and turned into a graph once, the pairwise tasks only read the corpus
+        ModelCorpus corpus = ModelCorpus.load(files, config);
+        logger.info("Time taken to load the models: " + (System.currentTimeMillis() - similarityStartTime) + " ms");
+        if (config.getSubtreeIndexPath() != null) {
+            SubtreeIndex.build(corpus, config.getSubtreeMinSize()).saveToCSV(config.getSubtreeIndexPath());
+        }
 
+        // Models with the same graph and names get the same results, so only the first model of each class is compared
+        int[][] classes = config.isDeduplicate() ? corpus.graphClasses() : singletonClasses(numFiles);
+        int[] representatives = new int[classes.length];
+        for (int c = 0; c < classes.length; c++) {
+            representatives[c] = classes[c][0];
+        }
+        ModelCorpus scoredCorpus = corpus.subset(representatives);
+        if (classes.length < numFiles) {
+            logger.info(numFiles + " models in " + classes.length + " classes of identical models, "
+                    + ((long) classes.length * (classes.length + 1) / 2) + " pairs compared instead of " + ((long) numFiles * (numFiles + 1) / 2));
+        }
 
-        double[][] averageSimilarityMatrix = new double[numFiles][numFiles];
+        // The word vectors and the words of the names the semantic similarity is computed with, handed to the measures
+        SemanticContext semanticContext = SemanticContext.of(config);
+        if (config.getEmbeddingStorePath() != null && semanticContext.getWordVectors() instanceof EmbeddingStore embeddingStore) {
+            // The vectors of the tokens of the corpus, exported by EmbeddingStoreExporter, instead of the whole fastText model
+            logger.info(embeddingStore.getPrecision() + " word vectors of " + embeddingStore.size() + " tokens read from " + config.getEmbeddingStorePath());
+        }
 
+        PairScheduler scheduler = new PairScheduler(config.getTileSize());
+        // Results of earlier runs, keyed by model content, so only pairs with new or changed models are computed
+        PairResultStore store = config.isIncremental() ? PairResultStore.open(config.getPairStorePath(), measureKey(config, semanticContext),
+                config.getCheckpointIntervalSeconds() * 1000L) : null;
 
+        if (config.isLsh()) {
+            // Only the pairs whose structural shingles collide are scored, no N x N matrix is allocated
+            if (config.isCheckpoint() || test || config.getTopK() > 0) {
+                logger.warn("The checkpoint, the weight grid and top-k are not used in LSH mode");
+            }
+            calculateLsh(corpus, scoredCorpus, classes, config, semanticContext, store);
+            if (store != null) {
+                store.close();
+            }
+            logger.info("Time taken for similarity calculations: "
+                    + TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - similarityStartTime) + " minutes");
+            return;
+        }
 
-        Set<String> compared = new HashSet<>();
+        if (config.getTopK() > 0) {
+            // Only the k nearest neighbours of each model are kept, no N x N matrix is allocated
+            if (config.isCheckpoint() || test) {
+                logger.warn("The checkpoint and the weight grid are not used in top-k mode");
+            }
+            TopKNeighbours neighbours = calculateTopK(scoredCorpus, classes, numFiles, config, semanticContext, scheduler, store);
+            exportNeighbours(neighbours, config.getTopKPath(), corpus.getModelNames(), config);
+            logVectorCache(semanticContext);
+            if (store != null) {
+                store.close();
+            }
+            logger.info("Time taken for similarity calculations: "
+                    + TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - similarityStartTime) + " minutes");
+            return;
+        }
 
-        if (test) {
-            for (int i = 0; i <= 10; i++) {
-                double wStruct = i * 0.1;
-                double wSemantic = 1.0 - wStruct;
-                wStruct = Math.round(wStruct * 10.0) / 10.0;
-                String structurePath = structureSimilarityPath.replace(".csv", "_wStruct_" + wStruct + ".csv");
-                String semanticPath = semanticSimilarityPath.replace(".csv", "_wStruct_" + wStruct + ".csv");
-                String averagePath = averageSimilarityPath.replace(".csv", "_wStruct_" + wStruct + ".csv");
+        // Every measure of "measures" prepares each model once, then all of them are scored in the same sweep over the pairs
+        List<SimilarityMeasure<?>> measures = SimilarityMeasures.create(config, semanticContext);
+        long prepareStartTime = System.currentTimeMillis();
+        List<PreparedMeasure<?>> preparedMeasures = new ArrayList<>();
+        for (SimilarityMeasure<?> measure : measures) {
+            preparedMeasures.add(PreparedMeasure.prepare(measure, scoredCorpus));
+        }
+        logger.info("Time taken to prepare the measures " + config.getMeasures() + ": " + (System.currentTimeMillis() - prepareStartTime) + " ms");
+
+        // Only the upper triangle of each matrix is stored, off-heap; the weighted one is derived on demand
+        SimilarityMatrix[] matrices = new SimilarityMatrix[measures.size()];
+        SimilarityMatrix[] scoredMatrices = new SimilarityMatrix[measures.size()];
+        for (int m = 0; m < measures.size(); m++) {
+            matrices[m] = createMatrix(config, measures.get(m).getName(), numFiles);
+            // The pairs of classes are computed, each result being written to all the pairs of models of the two classes
+            scoredMatrices[m] = classes.length < numFiles ? new FanOutSimilarityMatrix(matrices[m], classes) : matrices[m];
+        }
+        if (store != null && (!config.getMeasures().contains(StructuralMeasure.NAME) || !config.getMeasures().contains(SemanticMeasure.NAME))) {
+            logger.warn("The pair store holds the structural and semantic similarities together, it is not used without both measures");
+        }
 
-                ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-                List<Future<?>> futures = calculateSimilarities(files, graphSimilarityMatrix, semanticSimilarityMatrix, averageSimilarityMatrix, wStruct, wSemantic, executor);
-                executor.shutdown();
-                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        // Completed tiles are appended to the checkpoint as the run goes, --resume continues from them
+        Checkpoint checkpoint = config.isCheckpoint()
+                ? Checkpoint.open(config.getCheckpointPath(), fingerprint(corpus, config, semanticContext), config.isResume(), scoredCorpus.size(),
+                config.getTileSize(), scoredMatrices, config.getCheckpointIntervalSeconds() * 1000L)
+                : null;
 
-                // Lista per i nomi dei file per la riga e la colonna del CSV
-                List<String> modelNames = new ArrayList<>();
-                for (File file : files) {
-                    modelNames.add(file.getName());
-                }
-                saveMatrixToCSV(averageSimilarityMatrix, averagePath, modelNames);
+        calculateSimilarities(scoredCorpus, preparedMeasures, scoredMatrices, config, scheduler, store, checkpoint);
+        if (config.getMeasures().contains(SemanticMeasure.NAME)) {
+            logVectorCache(semanticContext);
+        }
+
+        // Lista per i nomi dei file per la riga e la colonna del CSV
+        List<String> modelNames = corpus.getModelNames();
+        SimilarityMatrix graphSimilarityMatrix = null;
+        SimilarityMatrix semanticSimilarityMatrix = null;
+        for (int m = 0; m < measures.size(); m++) {
+            String name = measures.get(m).getName();
+            exportMatrix(matrices[m], matrixPath(config, name), modelNames, config, false);
+            if (name.equals(StructuralMeasure.NAME)) {
+                graphSimilarityMatrix = matrices[m];
+            } else if (name.equals(SemanticMeasure.NAME)) {
+                semanticSimilarityMatrix = matrices[m];
             }
-        } else {
-            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
 
-            List<Future<?>> futures = calculateSimilarities(files, graphSimilarityMatrix, semanticSimilarityMatrix, averageSimilarityMatrix, weight_structural, weight_semantic, executor);
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (graphSimilarityMatrix == null || semanticSimilarityMatrix == null) {
+            logger.warn("The weighted similarity needs the structural and semantic measures, " + averageSimilarityPath + " is not written");
+        } else if (test) {
+            // The structural and semantic similarities do not depend on the weights: the weighted matrix of every
+            // point of the grid is derived from them
+            for (double[] weights : config.getWeightGrid()) {
+                double wStruct = weights[0];
+                double wSemantic = weights[1];
+                String averagePath = averageSimilarityPath.replace(".csv", "_wStruct_" + wStruct + ".csv");
 
-            // Lista per i nomi dei file per la riga e la colonna del CSV
-            List<String> modelNames = new ArrayList<>();
-            for (File file : files) {
-                modelNames.add(file.getName());
+                SimilarityMatrixView averageSimilarityMatrix = new WeightedSimilarityMatrix(graphSimilarityMatrix, semanticSimilarityMatrix, wStruct, wSemantic);
+                exportMatrix(averageSimilarityMatrix, averagePath, modelNames, config, true);
             }
+        } else {
+            SimilarityMatrixView averageSimilarityMatrix = new WeightedSimilarityMatrix(graphSimilarityMatrix, semanticSimilarityMatrix, weight_structural, weight_semantic);
+            exportMatrix(averageSimilarityMatrix, averageSimilarityPath, modelNames, config, true);
+        }
 
-            // Metodo per salvare matrici in CSV
-            saveMatrixToCSV(graphSimilarityMatrix, structureSimilarityPath, modelNames);
-            saveMatrixToCSV(semanticSimilarityMatrix, semanticSimilarityPath, modelNames);
-            saveMatrixToCSV(averageSimilarityMatrix, averageSimilarityPath, modelNames);
+        if (store != null) {
+            store.close();
+        }
+        if (checkpoint != null) {
+            checkpoint.close();
         }
 
         long similarityEndTime = System.currentTimeMillis();
@@ -206,58 +307,422 @@ public class Main {
         logger.info("Time taken for similarity calculations: " + minutes + " minutes");
     }
 
-    private static List<Future<?>> calculateSimilarities(List<File> files, double[][] graphSimilarityMatrix, double[][] semanticSimilarityMatrix, double[][] averageSimilarityMatrix, double w_struct, double w_semantic, ExecutorService executor) throws IOException {
-        HashSet<String> compared = new HashSet<>();
-        JsonObject config = loadConfiguration("src/main/resources/config_similarity_measure.json");
-        boolean test = config.getBoolean("test");
-        System.out.println("Calculating similarities..." + w_struct + " " + w_semantic);
-        List<Future<?>> futures = new ArrayList<>();
-        for (int i = 0; i < files.size(); i++) {
-            for (int j = i; j < files.size(); j++) {
-                File file1 = files.get(i);
-                File file2 = files.get(j);
-
-                final int index1 = i;
-                final int index2 = j;
-
-                Future<?> future = executor.submit(() -> {
-                    try {
-                        JsonObject json1 = parseJsonFile(file1);
-                        JsonObject json2 = parseJsonFile(file2);
-                        String comparisonKey1 = file1.getName() + file2.getName();
-                        String comparisonKey2 = file2.getName() + file1.getName();
-
-                        if (!compared.contains(comparisonKey1) && !compared.contains(comparisonKey2)) {
-                            logger.info("Comparing " + file1.getName() + " and " + file2.getName());
-                            double[] similarities = Similarity.calculateComplete(json1, json2, file1.getName(), file2.getName(), w_struct, w_semantic);
-
-                            System.out.println("Structural Similarity: " + similarities[0]);
-                            System.out.println("Semantic Similarity: " + similarities[1]);
-                            System.out.println("Average Similarity: " + similarities[2]);            
-
-                            if (!test) {
-                                graphSimilarityMatrix[index1][index2] = similarities[0];
-                                graphSimilarityMatrix[index2][index1] = similarities[0];
-                                semanticSimilarityMatrix[index1][index2] = similarities[1];
-                                semanticSimilarityMatrix[index2][index1] = similarities[1];
-                            }
-                            averageSimilarityMatrix[index1][index2] = similarities[2];
-                            averageSimilarityMatrix[index2][index1] = similarities[2];
-                            compared.add(comparisonKey1);
-                            compared.add(comparisonKey2);
-
-                            logger.info("Comparison done.");
-                        } else {
-                            logger.info("Comparison already done: " + file1.getName() + " and " + file2.getName());
+    // Fills the matrix of every measure, visiting each pair once; the weighted average is derived afterwards. The pair
+    // store, when there is one, stands for the structural and semantic measures together
+    static void calculateSimilarities(ModelCorpus corpus, List<PreparedMeasure<?>> measures, SimilarityMatrix[] matrices, SimilarityConfig config, PairScheduler scheduler, PairResultStore store, Checkpoint checkpoint) {
+        System.out.println("Calculating similarities..." + config.getWeightOfStructural() + " " + config.getWeightOfSemantic());
+        int structural = config.getMeasures().indexOf(StructuralMeasure.NAME);
+        int semantic = config.getMeasures().indexOf(SemanticMeasure.NAME);
+        PairResultStore pairStore = structural >= 0 && semantic >= 0 ? store : null;
+        // Measures that score all the pairs at once fill their matrix first, the sweep then only reads it
+        boolean[] scoredAll = new boolean[measures.size()];
+        for (int m = 0; m < measures.size(); m++) {
+            long startTime = System.currentTimeMillis();
+            scoredAll[m] = measures.get(m).scoreAll(matrices[m]);
+            if (scoredAll[m]) {
+                logger.info("Time taken to score all the pairs of the " + measures.get(m).getName() + " measure: " + (System.currentTimeMillis() - startTime) + " ms");
+            }
+        }
+        // Every unordered pair is visited exactly once (j >= i), so no bookkeeping of compared pairs is needed
+        scheduler.run(corpus.size(), (index1, index2) -> {
+            ModelCorpus.Entry entry1 = corpus.get(index1);
+            ModelCorpus.Entry entry2 = corpus.get(index2);
+            if (!entry1.isLoaded() || !entry2.isLoaded()) {
+                logger.error("Error reading files: " + entry1.getFileName() + " or " + entry2.getFileName());
+                return;
+            }
+            double[] stored = pairStore == null ? null : pairStore.get(entry1.getContentHash(), entry2.getContentHash());
+            if (stored == null && logger.isDebugEnabled()) {
+                logger.debug("Comparing " + entry1.getFileName() + " and " + entry2.getFileName());
+            }
+            double[] similarities = new double[measures.size()];
+            boolean failed = false;
+            for (int m = 0; m < measures.size(); m++) {
+                if (stored != null && (m == structural || m == semantic)) {
+                    similarities[m] = m == structural ? stored[0] : stored[1];
+                } else if (scoredAll[m]) {
+                    similarities[m] = matrices[m].get(index1, index2);
+                } else {
+                    similarities[m] = measures.get(m).score(index1, index2);
+                }
+                // A pair that could not be compared scores 0, as before, but is not stored
+                if (Double.isNaN(similarities[m])) {
+                    similarities[m] = 0.0;
+                    failed = true;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug(measures.get(m).getName() + " similarity: " + similarities[m]);
+                }
+                matrices[m].set(index1, index2, similarities[m]);
+            }
+            if (pairStore != null && stored == null && !failed) {
+                try {
+                    pairStore.put(entry1.getContentHash(), entry2.getContentHash(), similarities[structural], similarities[semantic]);
+                } catch (IOException e) {
+                    logger.error("Error writing the pair store", e);
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Comparison done.");
+            }
+        }, checkpoint);
+    }
+
+    // The structural, semantic and weighted similarities of a pair of models of the corpus, scored by the structural and
+    // semantic measures as in the matrices, from the pair store when it has them; zeros, not stored, when the pair
+    // could not be compared
+    private static double[] scorePair(ModelCorpus corpus, int index1, int index2, PreparedMeasure<?> structural, PreparedMeasure<?> semantic,
+                                      SimilarityConfig config, PairResultStore store) {
+        ModelCorpus.Entry entry1 = corpus.get(index1);
+        ModelCorpus.Entry entry2 = corpus.get(index2);
+        double[] stored = store == null ? null : store.get(entry1.getContentHash(), entry2.getContentHash());
+        if (stored != null) {
+            return new double[]{stored[0], stored[1], config.getWeightOfStructural() * stored[0] + config.getWeightOfSemantic() * stored[1]};
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Comparing " + entry1.getFileName() + " and " + entry2.getFileName());
+        }
+        double structuralSimilarity = structural.score(index1, index2);
+        if (Double.isNaN(structuralSimilarity)) {
+            return new double[]{0.0, 0.0, 0.0};
+        }
+        double semanticSimilarity = semantic.score(index1, index2);
+        double[] similarities = {structuralSimilarity, semanticSimilarity,
+                config.getWeightOfStructural() * structuralSimilarity + config.getWeightOfSemantic() * semanticSimilarity};
+        if (store != null) {
+            try {
+                store.put(entry1.getContentHash(), entry2.getContentHash(), similarities[0], similarities[1]);
+            } catch (IOException e) {
+                logger.error("Error writing the pair store", e);
+            }
+        }
+        return similarities;
+    }
+
+    /*
+     * Scores only the candidate pairs of an LSH index over the MinHash signatures of the structural shingles of the
+     * models, and each class of identical models with itself, then writes them as a sparse matrix. The recall of the
+     * candidates is estimated from a sample of model pairs scored exactly.
+     */
+    private static void calculateLsh(ModelCorpus corpus, ModelCorpus scoredCorpus, int[][] classes, SimilarityConfig config, SemanticContext context, PairResultStore store) throws IOException {
+        int bands = config.getLshBands();
+        int rows = config.getLshRows();
+        MinHashSignature[] signatures = new MinHashSignature[scoredCorpus.size()];
+        IntStream.range(0, signatures.length).parallel().forEach(c -> {
+            if (scoredCorpus.get(c).isLoaded()) {
+                signatures[c] = MinHashSignature.of(scoredCorpus.get(c).getGraph(), config.getLshPathLength(), bands * rows);
+            }
+        });
+        LshIndex index = LshIndex.build(signatures, bands, rows, config.getLshMaxBucketSize());
+
+        List<int[]> classPairs = new ArrayList<>();
+        for (int c = 0; c < classes.length; c++) {
+            if (classes[c].length > 1 && scoredCorpus.get(c).isLoaded()) {
+                classPairs.add(new int[]{c, c});
+            }
+        }
+        for (int k = 0; k < index.candidateCount(); k++) {
+            classPairs.add(new int[]{index.first(k), index.second(k)});
+        }
+        long allPairs = (long) corpus.size() * (corpus.size() - 1) / 2;
+        logger.info("LSH with " + bands + " bands of " + rows + " rows: " + classPairs.size() + " pairs of classes to score, out of "
+                + ((long) classes.length * (classes.length - 1) / 2) + " pairs of classes and " + allPairs + " pairs of models");
+
+        // Each model is prepared once by the measures, as for the matrices
+        PreparedMeasure<ModelCorpus.Entry> structural = PreparedMeasure.prepare(new StructuralMeasure(config), scoredCorpus);
+        PreparedMeasure<float[]> semantic = PreparedMeasure.prepare(new SemanticMeasure(context), scoredCorpus);
+        double[][] results = new double[classPairs.size()][];
+        IntStream.range(0, classPairs.size()).parallel().forEach(k ->
+                results[k] = scorePair(scoredCorpus, classPairs.get(k)[0], classPairs.get(k)[1], structural, semantic, config, store));
+        exportSparse(classPairs, results, classes, config.getLshPath(), corpus.getModelNames(), config);
+
+        if (config.getLshRecallSample() > 0) {
+            measureRecall(corpus, scoredCorpus, classes, index, structural, semantic, config, store);
+        }
+    }
+
+    // Writes the scored pairs of models i < j, every pair of classes standing for all the pairs of their models
+    private static void exportSparse(List<int[]> classPairs, double[][] results, int[][] classes, String csvPath, List<String> modelNames, SimilarityConfig config) throws IOException {
+        File parentDir = new File(csvPath).getAbsoluteFile().getParentFile();
+        if (!parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create the directory of " + csvPath);
+        }
+        // (i << 32 | j) of every pair of models, and the scored pair of classes it comes from
+        List<long[]> pairs = new ArrayList<>();
+        for (int k = 0; k < classPairs.size(); k++) {
+            for (int i : classes[classPairs.get(k)[0]]) {
+                for (int j : classes[classPairs.get(k)[1]]) {
+                    if (i != j && (classPairs.get(k)[0] != classPairs.get(k)[1] || i < j)) {
+                        pairs.add(new long[]{i < j ? ((long) i << 32) | j : ((long) j << 32) | i, k});
+                    }
+                }
+            }
+        }
+        pairs.sort(Comparator.comparingLong(pair -> pair[0]));
+
+        String format = config.getExportFormat();
+        if (format.equals("csv") || format.equals("both")) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(csvPath), 1 << 20)) {
+                writer.write("model1,model2,structural,semantic,similarity");
+                writer.newLine();
+                for (long[] pair : pairs) {
+                    double[] result = results[(int) pair[1]];
+                    writer.write(modelNames.get((int) (pair[0] >>> 32)) + "," + modelNames.get((int) pair[0]) + ","
+                            + result[0] + "," + result[1] + "," + result[2]);
+                    writer.newLine();
+                }
+            }
+            logger.info("Saved " + csvPath);
+        }
+        if (format.equals("npy") || format.equals("both")) {
+            // Coordinate format: row and column indexes and the weighted similarity of each pair
+            String basePath = csvPath.endsWith(".csv") ? csvPath.substring(0, csvPath.length() - 4) : csvPath;
+            int[] rowIndexes = new int[pairs.size()];
+            int[] colIndexes = new int[pairs.size()];
+            float[] similarities = new float[pairs.size()];
+            for (int k = 0; k < pairs.size(); k++) {
+                rowIndexes[k] = (int) (pairs.get(k)[0] >>> 32);
+                colIndexes[k] = (int) pairs.get(k)[0];
+                similarities[k] = (float) results[(int) pairs.get(k)[1]][2];
+            }
+            NpyWriter.writeInt32(rowIndexes, rowIndexes.length, 1, new File(basePath + "_rows.npy"));
+            NpyWriter.writeInt32(colIndexes, colIndexes.length, 1, new File(basePath + "_cols.npy"));
+            NpyWriter.writeFloat32(similarities, similarities.length, 1, new File(basePath + "_similarities.npy"));
+            NpyWriter.writeNames(modelNames, new File(basePath + "_names.txt"));
+            logger.info("Saved " + basePath + "_rows.npy, _cols.npy and _similarities.npy");
+        }
+        logger.info("Sparse matrix: " + pairs.size() + " pairs of models");
+    }
+
+    /*
+     * Scores a uniform sample of distinct model pairs exactly and writes, for a few thresholds of the weighted similarity, how
+     * many of the sampled pairs above it are LSH candidates. All the pairs are used when there are fewer than the sample.
+     */
+    private static void measureRecall(ModelCorpus corpus, ModelCorpus scoredCorpus, int[][] classes, LshIndex index, PreparedMeasure<?> structural,
+                                      PreparedMeasure<?> semantic, SimilarityConfig config, PairResultStore store) throws IOException {
+        int[] classOf = new int[corpus.size()];
+        for (int c = 0; c < classes.length; c++) {
+            for (int i : classes[c]) {
+                classOf[i] = c;
+            }
+        }
+        long allPairs = (long) corpus.size() * (corpus.size() - 1) / 2;
+        List<int[]> sample = new ArrayList<>();
+        if (allPairs <= config.getLshRecallSample()) {
+            for (int i = 0; i < corpus.size(); i++) {
+                for (int j = i + 1; j < corpus.size(); j++) {
+                    sample.add(new int[]{i, j});
+                }
+            }
+        } else {
+            // Distinct pairs, so that none is counted twice
+            Set<Long> sampled = new HashSet<>();
+            Random random = new Random(42);
+            while (sample.size() < config.getLshRecallSample()) {
+                int i = random.nextInt(corpus.size());
+                int j = random.nextInt(corpus.size());
+                if (i != j && sampled.add(((long) Math.min(i, j) << 32) | Math.max(i, j))) {
+                    sample.add(new int[]{Math.min(i, j), Math.max(i, j)});
+                }
+            }
+        }
+        sample.removeIf(pair -> !corpus.get(pair[0]).isLoaded() || !corpus.get(pair[1]).isLoaded());
+
+        double[] exact = new double[sample.size()];
+        IntStream.range(0, sample.size()).parallel().forEach(k ->
+                exact[k] = scorePair(scoredCorpus, classOf[sample.get(k)[0]], classOf[sample.get(k)[1]], structural, semantic, config, store)[2]);
+
+        String basePath = config.getLshPath().endsWith(".csv") ? config.getLshPath().substring(0, config.getLshPath().length() - 4) : config.getLshPath();
+        String recallPath = basePath + "_recall.csv";
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(recallPath))) {
+            writer.write("threshold,sampledPairs,pairsAbove,candidatesAbove,recall");
+            writer.newLine();
+            for (double threshold : new double[]{0.5, 0.6, 0.7, 0.8, 0.9}) {
+                int above = 0;
+                int found = 0;
+                for (int k = 0; k < sample.size(); k++) {
+                    if (exact[k] >= threshold) {
+                        above++;
+                        int class1 = classOf[sample.get(k)[0]];
+                        int class2 = classOf[sample.get(k)[1]];
+                        if (class1 == class2 || index.isCandidate(class1, class2)) {
+                            found++;
                         }
-                    } catch (IOException e) {
-                        logger.error("Error reading files: " + file1.getName() + " or " + file2.getName(), e);
                     }
-                });
-                futures.add(future);
+                }
+                String recall = above == 0 ? "" : String.valueOf((double) found / above);
+                writer.write(threshold + "," + sample.size() + "," + above + "," + found + "," + recall);
+                writer.newLine();
+                logger.info("LSH recall at similarity >= " + threshold + ": " + found + " of " + above + " sampled pairs");
+            }
+        }
+        logger.info("Saved " + recallPath);
+    }
+
+    // Keeps the k most similar models of each model; a pair is only scored while it can still enter a top k, first
+    // bounding its structural similarity from the category profiles, then scoring its cheaper semantic similarity.
+    // The corpus holds the first model of each class, and a pair of classes stands for all the pairs of their models
+    private static TopKNeighbours calculateTopK(ModelCorpus corpus, int[][] classes, int size, SimilarityConfig config, SemanticContext context, PairScheduler scheduler, PairResultStore store) {
+        TopKNeighbours neighbours = new TopKNeighbours(size, config.getTopK());
+        double wStruct = config.getWeightOfStructural();
+        double wSemantic = config.getWeightOfSemantic();
+        AtomicInteger pruned = new AtomicInteger();
+        AtomicInteger scored = new AtomicInteger();
+        // The semantic similarity of a pair is the dot product of two model vectors, each computed once
+        PreparedMeasure<float[]> semanticVectors = PreparedMeasure.prepare(new SemanticMeasure(context), corpus);
+        scheduler.run(corpus.size(), (index1, index2) -> {
+            ModelCorpus.Entry entry1 = corpus.get(index1);
+            ModelCorpus.Entry entry2 = corpus.get(index2);
+            if ((index1 == index2 && classes[index1].length == 1) || !entry1.isLoaded() || !entry2.isLoaded()) {
+                return;
+            }
+            double[] stored = store == null ? null : store.get(entry1.getContentHash(), entry2.getContentHash());
+            if (stored != null) {
+                offerAll(neighbours, classes, index1, index2, wStruct * stored[0] + wSemantic * stored[1], stored[0], stored[1]);
+                return;
+            }
+            // The category profile only bounds the common subgraph measures
+            double structuralBound = config.getStructuralMeasure().equals("wl") ? 1.0
+                    : entry1.getProfile().structuralUpperBound(entry2.getProfile(), config.getCompareMode());
+            if (!canAnyEnter(neighbours, classes, index1, index2, wStruct * structuralBound + wSemantic)) {
+                pruned.incrementAndGet();
+                return;
+            }
+            double semantic = semanticVectors.score(index1, index2);
+            if (!canAnyEnter(neighbours, classes, index1, index2, wStruct * structuralBound + wSemantic * semantic)) {
+                pruned.incrementAndGet();
+                return;
+            }
+            double structural = Similarity.tryStructuralSimilarity(entry1, entry2, config);
+            scored.incrementAndGet();
+            if (Double.isNaN(structural)) {
+                structural = 0.0;
+            } else if (store != null) {
+                try {
+                    store.put(entry1.getContentHash(), entry2.getContentHash(), structural, semantic);
+                } catch (IOException e) {
+                    logger.error("Error writing the pair store", e);
+                }
+            }
+            offerAll(neighbours, classes, index1, index2, wStruct * structural + wSemantic * semantic, structural, semantic);
+        });
+        logger.info("Top-" + config.getTopK() + ": " + scored.get() + " pairs scored, " + pruned.get() + " pairs skipped by their bounds");
+        return neighbours;
+    }
+
+    // Whether a pair of models of the two classes can still enter the top k of one of them
+    private static boolean canAnyEnter(TopKNeighbours neighbours, int[][] classes, int class1, int class2, double bound) {
+        for (int i : classes[class1]) {
+            for (int j : classes[class2]) {
+                if (i != j && neighbours.canEnter(i, j, bound)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Offers every pair of distinct models of the two classes
+    private static void offerAll(TopKNeighbours neighbours, int[][] classes, int class1, int class2, double similarity, double structural, double semantic) {
+        for (int i : classes[class1]) {
+            for (int j : classes[class2]) {
+                if (class1 != class2 || i < j) {
+                    neighbours.offer(i, j, similarity, structural, semantic);
+                }
+            }
+        }
+    }
+
+    // Method to save the neighbours in the formats of "exportFormat": the CSV, and/or the .npy index and similarity arrays
+    public static void exportNeighbours(TopKNeighbours neighbours, String csvPath, List<String> modelNames, SimilarityConfig config) throws IOException {
+        File parentDir = new File(csvPath).getAbsoluteFile().getParentFile();
+        if (!parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create the directory of " + csvPath);
+        }
+        String format = config.getExportFormat();
+        if (format.equals("csv") || format.equals("both")) {
+            neighbours.saveToCSV(csvPath, modelNames);
+            logger.info("Saved " + csvPath);
+        }
+        if (format.equals("npy") || format.equals("both")) {
+            String basePath = csvPath.endsWith(".csv") ? csvPath.substring(0, csvPath.length() - 4) : csvPath;
+            neighbours.saveToNpy(basePath, modelNames);
+            logger.info("Saved " + basePath + "_indices.npy");
+        }
+    }
+
+    // Method to log the use of the word vectors, and the tokens an embedding store did not have
+    private static void logVectorCache(SemanticContext context) {
+        logger.info("Word vector cache: " + context.getVectorCache());
+        if (context.getWordVectors() instanceof EmbeddingStore embeddingStore) {
+            if (embeddingStore.getApproximatedTokens() > 0) {
+                logger.info(embeddingStore.getApproximatedTokens() + " tokens are not in the embedding store and were approximated from their n-grams");
+            }
+            if (embeddingStore.getUnknownTokens() > 0) {
+                logger.warn(embeddingStore.getUnknownTokens() + " tokens are not in the embedding store and were left out, export it again for the new models");
             }
         }
-        return futures;
+    }
+
+    // Method to get the key of the parameters the stored structural and semantic similarities depend on
+    static String measureKey(SimilarityConfig config, SemanticContext context) {
+        String structural = switch (config.getStructuralMeasure()) {
+            case "mcsplit" -> "mcsplit-" + config.getMcsTimeBudgetMillis() + "ms-" + config.getCompareMode();
+            case "wl" -> "wl-" + config.getWlIterations();
+            default -> "mcs-" + config.getCompareMode();
+        };
+        // The semantic similarity depends on the word vectors, on the words the names are split into and on the
+        // precision of the vectors
+        return structural + "|" + context.getIdentity();
+    }
+
+    // Every model in a class of its own
+    private static int[][] singletonClasses(int size) {
+        int[][] classes = new int[size][];
+        for (int i = 0; i < size; i++) {
+            classes[i] = new int[]{i};
+        }
+        return classes;
+    }
+
+    // Method to identify the models, their order, the measures and their parameters of a run, for its checkpoint
+    static String fingerprint(ModelCorpus corpus, SimilarityConfig config, SemanticContext context) {
+        StringBuilder run = new StringBuilder(measureKey(config, context)).append('|').append(String.join(",", config.getMeasures()));
+        for (int i = 0; i < corpus.size(); i++) {
+            run.append('\n').append(corpus.get(i).getFileName()).append(',').append(corpus.get(i).getContentHash());
+        }
+        try {
+            return ModelCorpus.contentHash(run.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Method to get the output path of the matrix of a measure: the configured ones for the structural and semantic
+    // measures, <name>_sim.csv next to the structural matrix for the others
+    static String matrixPath(SimilarityConfig config, String measure) {
+        if (measure.equals(StructuralMeasure.NAME)) {
+            return config.getStructureSimilarityPath();
+        }
+        if (measure.equals(SemanticMeasure.NAME)) {
+            return config.getSemanticSimilarityPath();
+        }
+        File parentDir = new File(config.getStructureSimilarityPath()).getParentFile();
+        return new File(parentDir, measure + "_sim.csv").getPath();
+    }
+
+    // Method to allocate a matrix of the run, off-heap or memory-mapped under "matrixDirectory"
+    static SimilarityMatrix createMatrix(SimilarityConfig config, String name, int size) throws IOException {
+        PackedSimilarityMatrix.Precision precision = PackedSimilarityMatrix.Precision.valueOf(config.getMatrixPrecision().toUpperCase());
+        if (config.getMatrixStorage().equals("mapped")) {
+            File directory = new File(config.getMatrixDirectory());
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create the matrix directory: " + directory);
+            }
+            return PackedSimilarityMatrix.mapped(new File(directory, name + ".bin"), size, precision);
+        }
+        return PackedSimilarityMatrix.offHeap(size, precision);
     }
 
     // Method to load configuration from a JSON file
@@ -283,6 +748,8 @@ public class Main {
                     fileList.add(file);
                 }
             }
+            // Same order on every run, so a pair is always compared in the same direction
+            fileList.sort(Comparator.comparing(File::getName));
         } else {
             logger.warn("No files found in the directory: " + directoryPath);
         }
@@ -300,9 +767,27 @@ public class Main {
         }
     }
 
+    // Method to save a matrix in the formats of "exportFormat": the CSV, and/or <name>.npy with the model names in
+    // <name>_names.txt and, for the weighted matrices the clustering reads, the condensed distances in <name>_distance.npy
+    public static void exportMatrix(SimilarityMatrixView matrix, String csvPath, List<String> modelNames, SimilarityConfig config, boolean distance) throws IOException {
+        String format = config.getExportFormat();
+        if (format.equals("csv") || format.equals("both")) {
+            saveMatrixToCSV(matrix, csvPath, modelNames);
+        }
+        if (format.equals("npy") || format.equals("both")) {
+            String basePath = csvPath.endsWith(".csv") ? csvPath.substring(0, csvPath.length() - 4) : csvPath;
+            NpyWriter.writeMatrix(matrix, new File(basePath + ".npy"));
+            NpyWriter.writeNames(modelNames, new File(basePath + "_names.txt"));
+            if (distance) {
+                NpyWriter.writeCondensedDistance(matrix, new File(basePath + "_distance.npy"));
+            }
+            logger.info("Saved " + basePath + ".npy");
+        }
+    }
+
     // Method to save a matrix to a CSV file
-    public static void saveMatrixToCSV(double[][] matrix, String filePath, List<String> modelNames) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath)) {
+    public static void saveMatrixToCSV(SimilarityMatrixView matrix, String filePath, List<String> modelNames) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(filePath), 1 << 20)) {
             // Write the header
             writer.append("Model");
             for (String modelName : modelNames) {
@@ -311,10 +796,12 @@ public class Main {
             writer.append("\n");
 
             // Write the data
-            for (int i = 0; i < matrix.length; i++) {
+            double[] row = new double[matrix.size()];
+            for (int i = 0; i < matrix.size(); i++) {
+                matrix.row(i, row);
                 writer.append(modelNames.get(i));
-                for (int j = 0; j < matrix[i].length; j++) {
-                    writer.append(",").append(String.valueOf(matrix[i][j]));
+                for (int j = 0; j < row.length; j++) {
+                    writer.append(",").append(String.valueOf(row[j]));
                 }
                 writer.append("\n");
             }
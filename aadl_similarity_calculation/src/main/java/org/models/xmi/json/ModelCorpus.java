@@ -0,0 +1,238 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.config.SimilarityConfig;
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.similarityMeasure.CategoryProfile;
+import org.models.xmi.json.similarityMeasure.Similarity;
+import org.models.xmi.json.similarityMeasure.WLFeatures;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Every model of the similarity run, parsed and prepared exactly once.
+ * <p>
+ * The pairwise similarity tasks only read the entries of a corpus, so each JSON file is read from disk
+ * a single time instead of once per pair it takes part in.
+ */
+public class ModelCorpus {
+    private final static Logger logger = LogManager.getLogger(ModelCorpus.class);
+
+    private final List<Entry> entries;
+
+    private ModelCorpus(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    // Method to parse all the files and build their graphs and name lists in parallel
+    public static ModelCorpus load(List<File> files) throws InterruptedException {
+        return load(files, null);
+    }
+
+    // Same as above, also preparing the per-model features of the structural measure of the configuration
+    public static ModelCorpus load(List<File> files, SimilarityConfig config) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Callable<Entry>> tasks = new ArrayList<>();
+            for (File file : files) {
+                tasks.add(() -> loadEntry(file, config));
+            }
+            List<Entry> entries = new ArrayList<>();
+            for (Future<Entry> future : executor.invokeAll(tasks)) {
+                try {
+                    entries.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Error loading model", e.getCause());
+                }
+            }
+            return new ModelCorpus(entries);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Entry loadEntry(File file, SimilarityConfig config) {
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            JsonObject json;
+            try (JsonReader jsonReader = Json.createReader(new ByteArrayInputStream(content))) {
+                json = jsonReader.readObject();
+            }
+            CompactModelGraph graph = CompactModelGraph.fromJson(json);
+            List<String> nameList = Similarity.getNameListFromJSON(json);
+            logger.info("Loaded " + file.getName() + ": " + graph.vertexCount() + " nodes, " + graph.edgeCount() + " edges");
+            WLFeatures wlFeatures = config != null && config.getStructuralMeasure().equals("wl")
+                    ? WLFeatures.of(graph, config.getWlIterations()) : null;
+            return new Entry(file.getName(), contentHash(content), graphHash(graph, nameList), graph, nameList, CategoryProfile.of(graph), wlFeatures);
+        } catch (Exception e) {
+            logger.error("Error loading model: " + file.getName(), e);
+            return new Entry(file.getName(), null, null, null, null, null, null);
+        }
+    }
+
+    // SHA-256 of the file content, in hex
+    static String contentHash(byte[] content) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        StringBuilder hash = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hash.toString();
+    }
+
+    /*
+     * SHA-256 of all the similarities read from a model: the category of each node, each edge of the containment
+     * tree and each connection with its type, in the order of the graph, since the greedy matcher depends on it, and
+     * the name list. Two models with the same hash get the same results, whatever their file names and the parts of
+     * their JSON the similarities do not read.
+     */
+    static String graphHash(CompactModelGraph graph, List<String> nameList) throws IOException, NoSuchAlgorithmException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(graph.vertexCount());
+            for (int v = 0; v < graph.vertexCount(); v++) {
+                out.writeByte(graph.getCategoryCode(v));
+            }
+            out.writeInt(graph.edgeCount());
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                out.writeInt(graph.getEdgeSource(e));
+                out.writeInt(graph.getEdgeTarget(e));
+                out.writeByte(graph.getEdgeTypeCode(e));
+            }
+            out.writeInt(nameList.size());
+            for (String name : nameList) {
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        }
+        return contentHash(bytes.toByteArray());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Entry get(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * Groups the models with the same graph hash. Each class lists the indexes of its models in increasing order, the
+     * classes are in the order of their first model, and a model that could not be loaded is a class on its own.
+     */
+    public int[][] graphClasses() {
+        Map<String, List<Integer>> byHash = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            String graphHash = entries.get(i).getGraphHash();
+            byHash.computeIfAbsent(graphHash != null ? graphHash : "unloaded:" + i, hash -> new ArrayList<>()).add(i);
+        }
+        int[][] classes = new int[byHash.size()][];
+        int c = 0;
+        for (List<Integer> members : byHash.values()) {
+            classes[c++] = members.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return classes;
+    }
+
+    // The corpus of the given models, in that order
+    public ModelCorpus subset(int[] indexes) {
+        List<Entry> subset = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            subset.add(entries.get(index));
+        }
+        return new ModelCorpus(subset);
+    }
+
+    public List<String> getModelNames() {
+        List<String> modelNames = new ArrayList<>();
+        for (Entry entry : entries) {
+            modelNames.add(entry.getFileName());
+        }
+        return modelNames;
+    }
+
+    /**
+     * A parsed model: its graph, its category profile and the names used by the semantic similarity.
+     * Entries are shared by all the threads of the run and must not be modified.
+     */
+    public static final class Entry {
+        private final String fileName;
+        private final String contentHash;
+        private final String graphHash;
+        private final CompactModelGraph graph;
+        private final List<String> nameList;
+        private final CategoryProfile profile;
+        private final WLFeatures wlFeatures;
+
+        Entry(String fileName, String contentHash, String graphHash, CompactModelGraph graph, List<String> nameList, CategoryProfile profile, WLFeatures wlFeatures) {
+            this.fileName = fileName;
+            this.contentHash = contentHash;
+            this.graphHash = graphHash;
+            this.graph = graph;
+            this.nameList = nameList == null ? null : Collections.unmodifiableList(nameList);
+            this.profile = profile;
+            this.wlFeatures = wlFeatures;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        // SHA-256 of the JSON file, identifies the model content across runs
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        // SHA-256 of the graph and names, equal for models the similarities cannot tell apart
+        public String getGraphHash() {
+            return graphHash;
+        }
+
+        // The graph of the model, in the compact form the measures work on
+        public CompactModelGraph getGraph() {
+            return graph;
+        }
+
+        public List<String> getNameList() {
+            return nameList;
+        }
+
+        // Category and edge signature counts of the graph, for cheap bounds of the structural similarity
+        public CategoryProfile getProfile() {
+            return profile;
+        }
+
+        // Weisfeiler-Lehman features of the graph, null unless the run uses the "wl" structural measure
+        public WLFeatures getWlFeatures() {
+            return wlFeatures;
+        }
+
+        // False when the file could not be read or parsed
+        public boolean isLoaded() {
+            return graph != null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent, content-addressed store of pairwise similarity results.
+ * <p>
+ * A result is keyed by the content hashes of the two model JSON files, in the order they were compared, and by a
+ * key of the measure parameters that affect it. A rerun on a grown corpus therefore only computes the pairs that
+ * involve new or changed models. The file is append-only: one line {@code measureKey,hash1,hash2,structural,semantic}
+ * per result, flushed at most every {@code flushIntervalMillis}, so an interrupted run only loses the results of its
+ * last interval. Results of comparisons that failed must not be put in the store.
+ */
+public class PairResultStore implements Closeable {
+    private final static Logger logger = LogManager.getLogger(PairResultStore.class);
+
+    private final String measureKey;
+    private final Map<String, double[]> results = new ConcurrentHashMap<>();
+    private final BufferedWriter writer;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final long flushIntervalMillis;
+    private long lastFlush;
+
+    private PairResultStore(String measureKey, BufferedWriter writer, long flushIntervalMillis) {
+        this.measureKey = measureKey;
+        this.writer = writer;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Open the store at the given path, creating it if needed, and load the results computed with the same
+     * measure parameters.
+     *
+     * @param path       the store file
+     * @param measureKey the parameters of the measures, results stored with other parameters are ignored
+     * @param flushIntervalMillis the longest time a result stays buffered before it is written to the file
+     * @return the opened store
+     * @throws IOException if the store cannot be read or opened for writing
+     */
+    public static PairResultStore open(String path, String measureKey, long flushIntervalMillis) throws IOException {
+        File file = new File(path);
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create the directory of the pair store: " + path);
+        }
+        PairResultStore store = new PairResultStore(measureKey, new BufferedWriter(new FileWriter(file, true)), flushIntervalMillis);
+        if (file.length() > 0) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] values = line.split(",");
+                    // A truncated last line is left by a run that was killed while writing: skip it
+                    if (values.length != 5 || !values[0].equals(measureKey)) {
+                        continue;
+                    }
+                    try {
+                        store.results.put(values[1] + "," + values[2],
+                                new double[]{Double.parseDouble(values[3]), Double.parseDouble(values[4])});
+                    } catch (NumberFormatException e) {
+                        logger.warn("Skipping malformed line of the pair store: " + line);
+                    }
+                }
+            }
+        }
+        logger.info("Pair store " + path + " opened with " + store.results.size() + " results for " + measureKey);
+        return store;
+    }
+
+    // The {structural, semantic} similarities of the pair, or null if they were never computed
+    public double[] get(String hash1, String hash2) {
+        double[] result = results.get(hash1 + "," + hash2);
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(String hash1, String hash2, double structural, double semantic) throws IOException {
+        results.put(hash1 + "," + hash2, new double[]{structural, semantic});
+        String line = measureKey + "," + hash1 + "," + hash2 + "," + structural + "," + semantic + "\n";
+        synchronized (writer) {
+            writer.write(line);
+            long now = System.currentTimeMillis();
+            if (now - lastFlush >= flushIntervalMillis) {
+                writer.flush();
+                lastFlush = now;
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writer) {
+            writer.close();
+        }
+        logger.info("Pair store: " + hits.get() + " pairs reused, " + misses.get() + " pairs computed");
+    }
+}
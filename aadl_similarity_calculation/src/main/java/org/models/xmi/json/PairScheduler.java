@@ -0,0 +1,123 @@
+package org.models.xmi.json;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a task on every unordered pair (i, j), j >= i, of a corpus on a work-stealing {@link ForkJoinPool}.
+ * <p>
+ * The upper triangle of the pair space is cut into square tiles of {@code tileSize} rows by {@code tileSize}
+ * columns. The tile grid is split recursively in halves until a single tile is left, which is then run
+ * sequentially, so the models of a tile stay hot in cache while it runs and nothing is allocated per pair.
+ */
+public class PairScheduler {
+
+    @FunctionalInterface
+    public interface PairTask {
+        void compute(int i, int j);
+    }
+
+    // Lets a caller skip tiles that are already done and record the ones that complete
+    public interface TileObserver {
+        boolean isDone(int rowBlock, int colBlock);
+
+        void tileDone(int rowBlock, int colBlock);
+    }
+
+    private final int tileSize;
+    private final int parallelism;
+
+    public PairScheduler(int tileSize, int parallelism) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("The tile size must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        this.parallelism = parallelism;
+    }
+
+    public PairScheduler(int tileSize) {
+        this(tileSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    // Runs the task on every pair of {0, ..., size - 1} and returns when all of them are done
+    public void run(int size, PairTask task) {
+        run(size, task, null);
+    }
+
+    // Same as above, skipping the tiles the observer reports as done
+    public void run(int size, PairTask task, TileObserver observer) {
+        if (size == 0) {
+            return;
+        }
+        int blocks = (size + tileSize - 1) / tileSize;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new TileRange(size, task, observer, 0, blocks, 0, blocks));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // A rectangle of tiles [rowLo, rowHi) x [colLo, colHi) of the tile grid; only the tiles on or above the diagonal are run
+    private class TileRange extends RecursiveAction {
+        private final int size;
+        private final PairTask task;
+        private final TileObserver observer;
+        private final int rowLo;
+        private final int rowHi;
+        private final int colLo;
+        private final int colHi;
+
+        TileRange(int size, PairTask task, TileObserver observer, int rowLo, int rowHi, int colLo, int colHi) {
+            this.size = size;
+            this.task = task;
+            this.observer = observer;
+            this.rowLo = rowLo;
+            this.rowHi = rowHi;
+            this.colLo = colLo;
+            this.colHi = colHi;
+        }
+
+        @Override
+        protected void compute() {
+            // The whole rectangle lies below the diagonal
+            if (colHi - 1 < rowLo) {
+                return;
+            }
+            int rows = rowHi - rowLo;
+            int cols = colHi - colLo;
+            if (rows == 1 && cols == 1) {
+                if (observer == null) {
+                    runTile(rowLo, colLo);
+                } else if (!observer.isDone(rowLo, colLo)) {
+                    runTile(rowLo, colLo);
+                    observer.tileDone(rowLo, colLo);
+                }
+            } else if (rows >= cols) {
+                int mid = rowLo + rows / 2;
+                invokeAll(new TileRange(size, task, observer, rowLo, mid, colLo, colHi),
+                        new TileRange(size, task, observer, mid, rowHi, colLo, colHi));
+            } else {
+                int mid = colLo + cols / 2;
+                invokeAll(new TileRange(size, task, observer, rowLo, rowHi, colLo, mid),
+                        new TileRange(size, task, observer, rowLo, rowHi, mid, colHi));
+            }
+        }
+
+        private void runTile(int rowBlock, int colBlock) {
+            int rowStart = rowBlock * tileSize;
+            int rowEnd = Math.min(rowStart + tileSize, size);
+            int colStart = colBlock * tileSize;
+            int colEnd = Math.min(colStart + tileSize, size);
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int j = Math.max(i, colStart); j < colEnd; j++) {
+                    task.compute(i, j);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.models.xmi.json;
+
+import org.models.xmi.json.matrix.SimilarityMatrix;
+import org.models.xmi.json.similarityMeasure.SimilarityMeasure;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A similarity measure with the prepared state of every model of a corpus, so pairs are scored by model index.
+ * Models that were not loaded have no state and must not be scored.
+ */
+final class PreparedMeasure<P> {
+
+    private final SimilarityMeasure<P> measure;
+    private final Object[] states;
+
+    private PreparedMeasure(SimilarityMeasure<P> measure, Object[] states) {
+        this.measure = measure;
+        this.states = states;
+    }
+
+    static <P> PreparedMeasure<P> prepare(SimilarityMeasure<P> measure, ModelCorpus corpus) {
+        Object[] states = new Object[corpus.size()];
+        IntStream.range(0, corpus.size()).parallel().forEach(i -> {
+            if (corpus.get(i).isLoaded()) {
+                states[i] = measure.prepare(corpus.get(i));
+            }
+        });
+        return new PreparedMeasure<>(measure, states);
+    }
+
+    String getName() {
+        return measure.getName();
+    }
+
+    @SuppressWarnings("unchecked")
+    double score(int index1, int index2) {
+        return measure.score((P) states[index1], (P) states[index2]);
+    }
+
+    // Scores all the pairs into the matrix if the measure can, see SimilarityMeasure.scoreAll
+    @SuppressWarnings("unchecked")
+    boolean scoreAll(SimilarityMatrix matrix) {
+        return measure.scoreAll((List<P>) Arrays.asList(states), matrix);
+    }
+}
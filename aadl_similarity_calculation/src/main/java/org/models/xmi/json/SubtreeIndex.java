@@ -0,0 +1,125 @@
+package org.models.xmi.json;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.graphModel.Node;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Corpus-wide index of the component subtrees of the models by their Merkle hash, see
+ * {@link CompactModelGraph#getSubtreeHash(int)}, answering which models reuse a subsystem.
+ * <p>
+ * Only the subtrees of components with at least {@code minSize} nodes are indexed; features and small leaves are
+ * shared by nearly every model and say nothing.
+ */
+public class SubtreeIndex {
+    private final static Logger logger = LogManager.getLogger(SubtreeIndex.class);
+
+    private final ModelCorpus corpus;
+    // Every occurrence of each hash, as {model, node}, in the order of the corpus
+    private final Map<Long, List<int[]>> occurrences;
+
+    private SubtreeIndex(ModelCorpus corpus, Map<Long, List<int[]>> occurrences) {
+        this.corpus = corpus;
+        this.occurrences = occurrences;
+    }
+
+    public static SubtreeIndex build(ModelCorpus corpus, int minSize) {
+        Map<Long, List<int[]>> occurrences = new LinkedHashMap<>();
+        for (int m = 0; m < corpus.size(); m++) {
+            if (!corpus.get(m).isLoaded()) {
+                continue;
+            }
+            CompactModelGraph graph = corpus.get(m).getGraph();
+            for (int v = 0; v < graph.vertexCount(); v++) {
+                if (graph.getSubtreeSize(v) >= minSize && Node.typeOf(graph.getCategory(v)) != Node.Type.feature) {
+                    occurrences.computeIfAbsent(graph.getSubtreeHash(v), hash -> new ArrayList<>()).add(new int[]{m, v});
+                }
+            }
+        }
+        logger.info("Subtree index: " + occurrences.size() + " distinct subtrees of at least " + minSize + " nodes");
+        return new SubtreeIndex(corpus, occurrences);
+    }
+
+    // The indexes of the models that contain the subtree, in increasing order
+    public List<Integer> modelsWith(long hash) {
+        Set<Integer> models = new LinkedHashSet<>();
+        for (int[] occurrence : occurrences.getOrDefault(hash, Collections.emptyList())) {
+            models.add(occurrence[0]);
+        }
+        return new ArrayList<>(models);
+    }
+
+    /**
+     * Write the subtrees found in at least two models, one line
+     * {@code hash,category,name,size,models,occurrences,modelNames} each, the most reused first. A subtree that
+     * only occurs inside a larger shared subtree of as many models is left out, only the larger one is listed.
+     */
+    public void saveToCSV(String path) throws IOException {
+        File parentDir = new File(path).getAbsoluteFile().getParentFile();
+        if (!parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create the directory of " + path);
+        }
+        Map<Long, Integer> modelCounts = new HashMap<>();
+        for (long hash : occurrences.keySet()) {
+            modelCounts.put(hash, modelsWith(hash).size());
+        }
+        List<Long> shared = new ArrayList<>();
+        for (Map.Entry<Long, List<int[]>> entry : occurrences.entrySet()) {
+            int models = modelCounts.get(entry.getKey());
+            if (models >= 2 && !onlyInsideShared(entry.getValue(), models, modelCounts)) {
+                shared.add(entry.getKey());
+            }
+        }
+        shared.sort(Comparator.comparingInt((Long hash) -> -modelCounts.get(hash))
+                .thenComparingInt(hash -> -size(occurrences.get(hash).get(0))));
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+            writer.write("hash,category,name,size,models,occurrences,modelNames");
+            writer.newLine();
+            for (long hash : shared) {
+                int[] first = occurrences.get(hash).get(0);
+                CompactModelGraph graph = corpus.get(first[0]).getGraph();
+                List<String> modelNames = new ArrayList<>();
+                for (int model : modelsWith(hash)) {
+                    modelNames.add(corpus.get(model).getFileName());
+                }
+                writer.write(String.format("%016x", hash) + "," + graph.getCategory(first[1]) + "," + graph.getNodeName(first[1])
+                        + "," + graph.getSubtreeSize(first[1]) + "," + modelNames.size() + "," + occurrences.get(hash).size()
+                        + "," + String.join(";", modelNames));
+                writer.newLine();
+            }
+        }
+        logger.info("Subtree index saved to " + path + ": " + shared.size() + " shared subtrees");
+    }
+
+    // Whether every occurrence has a parent whose subtree is shared by as many models
+    private boolean onlyInsideShared(List<int[]> subtreeOccurrences, int models, Map<Long, Integer> modelCounts) {
+        for (int[] occurrence : subtreeOccurrences) {
+            CompactModelGraph graph = corpus.get(occurrence[0]).getGraph();
+            int parent = graph.getParent(occurrence[1]);
+            if (parent < 0 || modelCounts.getOrDefault(graph.getSubtreeHash(parent), 0) != models) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int size(int[] occurrence) {
+        return corpus.get(occurrence[0]).getGraph().getSubtreeSize(occurrence[1]);
+    }
+}
@@ -0,0 +1,193 @@
+package org.models.xmi.json;
+
+import org.models.xmi.json.matrix.NpyWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The k most similar models of every model, kept in a bounded heap per row while the pairs are scored.
+ * <p>
+ * Memory and output are O(N k) instead of the O(N^2) of the full matrices. The weakest neighbour of a full row is
+ * its threshold: a pair whose similarity cannot reach the thresholds of both of its rows cannot enter either top k,
+ * and need not be scored. Ties are broken by the lower model index, so the result does not depend on the order in
+ * which the pairs are scored.
+ */
+public class TopKNeighbours {
+
+    private final int size;
+    private final int k;
+    private final Row[] rows;
+
+    public TopKNeighbours(int size, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        this.size = size;
+        this.k = k;
+        this.rows = new Row[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = new Row(Math.min(k, Math.max(0, size - 1)));
+        }
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Whether a pair whose similarity is at most {@code bound} could still enter the top k of i or of j.
+     * Thresholds only rise, so a pair rejected once stays rejected.
+     */
+    public boolean canEnter(int i, int j, double bound) {
+        return rows[i].canEnter(j, bound) || rows[j].canEnter(i, bound);
+    }
+
+    // Offers the scored pair to both of its rows
+    public void offer(int i, int j, double similarity, double structural, double semantic) {
+        rows[i].offer(j, similarity, structural, semantic);
+        rows[j].offer(i, similarity, structural, semantic);
+    }
+
+    /**
+     * Write the neighbours as CSV, one line {@code model,neighbour,rank,similarity,structural,semantic} per
+     * neighbour, best first.
+     */
+    public void saveToCSV(String path, List<String> modelNames) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 20)) {
+            writer.write("model,neighbour,rank,similarity,structural,semantic\n");
+            for (int i = 0; i < size; i++) {
+                Row row = rows[i].sorted();
+                for (int r = 0; r < row.count; r++) {
+                    writer.write(modelNames.get(i) + "," + modelNames.get(row.neighbours[r]) + "," + (r + 1) + ","
+                            + row.similarities[r] + "," + row.structural[r] + "," + row.semantic[r] + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the neighbours as two N x k arrays, {@code <base>_indices.npy} (int32, -1 where a row has fewer than k
+     * neighbours) and {@code <base>_similarities.npy} (float32, NaN there), best first, with the model names of the
+     * indices in {@code <base>_names.txt}.
+     */
+    public void saveToNpy(String basePath, List<String> modelNames) throws IOException {
+        int[] indices = new int[size * k];
+        float[] similarities = new float[size * k];
+        for (int i = 0; i < size; i++) {
+            Row row = rows[i].sorted();
+            for (int r = 0; r < k; r++) {
+                indices[i * k + r] = r < row.count ? row.neighbours[r] : -1;
+                similarities[i * k + r] = r < row.count ? (float) row.similarities[r] : Float.NaN;
+            }
+        }
+        NpyWriter.writeInt32(indices, size, k, new File(basePath + "_indices.npy"));
+        NpyWriter.writeFloat32(similarities, size, k, new File(basePath + "_similarities.npy"));
+        NpyWriter.writeNames(modelNames, new File(basePath + "_names.txt"));
+    }
+
+    // A min-heap on (similarity, -index): the root is the weakest neighbour of the row
+    private static final class Row {
+        private final int[] neighbours;
+        private final double[] similarities;
+        private final double[] structural;
+        private final double[] semantic;
+        private int count;
+
+        Row(int capacity) {
+            neighbours = new int[capacity];
+            similarities = new double[capacity];
+            structural = new double[capacity];
+            semantic = new double[capacity];
+        }
+
+        synchronized boolean canEnter(int neighbour, double bound) {
+            return count < neighbours.length || (neighbours.length > 0 && weaker(0, bound, neighbour));
+        }
+
+        synchronized void offer(int neighbour, double similarity, double structuralSimilarity, double semanticSimilarity) {
+            if (count < neighbours.length) {
+                set(count, neighbour, similarity, structuralSimilarity, semanticSimilarity);
+                siftUp(count++);
+            } else if (neighbours.length > 0 && weaker(0, similarity, neighbour)) {
+                set(0, neighbour, similarity, structuralSimilarity, semanticSimilarity);
+                siftDown(0);
+            }
+        }
+
+        // Whether the entry at position p is weaker than (similarity, neighbour)
+        private boolean weaker(int p, double similarity, int neighbour) {
+            return similarities[p] < similarity || (similarities[p] == similarity && neighbours[p] > neighbour);
+        }
+
+        private void set(int p, int neighbour, double similarity, double structuralSimilarity, double semanticSimilarity) {
+            neighbours[p] = neighbour;
+            similarities[p] = similarity;
+            structural[p] = structuralSimilarity;
+            semantic[p] = semanticSimilarity;
+        }
+
+        private void swap(int a, int b) {
+            int n = neighbours[a];
+            neighbours[a] = neighbours[b];
+            neighbours[b] = n;
+            double s = similarities[a];
+            similarities[a] = similarities[b];
+            similarities[b] = s;
+            s = structural[a];
+            structural[a] = structural[b];
+            structural[b] = s;
+            s = semantic[a];
+            semantic[a] = semantic[b];
+            semantic[b] = s;
+        }
+
+        private void siftUp(int p) {
+            while (p > 0) {
+                int parent = (p - 1) / 2;
+                if (!weaker(p, similarities[parent], neighbours[parent])) {
+                    return;
+                }
+                swap(p, parent);
+                p = parent;
+            }
+        }
+
+        private void siftDown(int p) {
+            while (true) {
+                int weakest = p;
+                for (int child = 2 * p + 1; child <= 2 * p + 2 && child < count; child++) {
+                    if (weaker(child, similarities[weakest], neighbours[weakest])) {
+                        weakest = child;
+                    }
+                }
+                if (weakest == p) {
+                    return;
+                }
+                swap(p, weakest);
+                p = weakest;
+            }
+        }
+
+        // A copy of the row, best neighbour first
+        synchronized Row sorted() {
+            Row copy = new Row(count);
+            System.arraycopy(neighbours, 0, copy.neighbours, 0, count);
+            System.arraycopy(similarities, 0, copy.similarities, 0, count);
+            System.arraycopy(structural, 0, copy.structural, 0, count);
+            System.arraycopy(semantic, 0, copy.semantic, 0, count);
+            copy.count = count;
+            // Popping the weakest to the end leaves the strongest first
+            for (int end = count - 1; end > 0; end--) {
+                copy.swap(0, end);
+                copy.count = end;
+                copy.siftDown(0);
+            }
+            copy.count = count;
+            return copy;
+        }
+    }
+}
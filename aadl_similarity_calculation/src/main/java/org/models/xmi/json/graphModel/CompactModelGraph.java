@@ -0,0 +1,533 @@
+package org.models.xmi.json.graphModel;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.models.xmi.json.CommonFunction.resolveCategory;
+
+/**
+ * Immutable, primitive form of the graph {@link MakeCompleteGraph} builds from a model, used by the similarity
+ * measures.
+ * <p>
+ * Nodes are numbered in the order they are added to the JGraphT graph and edges likewise, so both iterate in the
+ * same order. A node is its category code and the index of its name in a table of the distinct names of the model;
+ * the edges are arrays of source, target and type, with the outgoing and incoming edges of each node in compressed
+ * sparse rows. The depth-first order of the nodes, as {@code DepthFirstIterator} visits the JGraphT graph, and the
+ * Merkle hashes of the subtrees of the containment hierarchy are computed once. JGraphT is only needed to display a
+ * model, see {@link #toGraph()}.
+ */
+public final class CompactModelGraph {
+    private final static Logger logger = LogManager.getLogger(CompactModelGraph.class);
+
+    private final static Node.Category[] CATEGORIES = Node.Category.values();
+    private final static Connection.ConnectionType[] CONNECTION_TYPES = Connection.ConnectionType.values();
+    private final static int REFINEMENT_ROUNDS = 4;
+
+    private final String name;
+    private final byte[] categories;
+    private final int[] nameIndexes;
+    private final String[] names;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final byte[] edgeTypes;
+    private final int[] outOffsets;
+    private final int[] outEdges;
+    private final int[] inOffsets;
+    private final int[] inEdges;
+    private final int[] depthFirstOrder;
+    // Containment tree: the parent of each node, -1 for the root, and the Merkle hash and size of its subtree
+    private final int[] parents;
+    private final long[] subtreeHashes;
+    private final int[] subtreeSizes;
+
+    private CompactModelGraph(String name, byte[] categories, int[] nameIndexes, String[] names,
+                              int[] edgeSources, int[] edgeTargets, byte[] edgeTypes) {
+        this.name = name;
+        this.categories = categories;
+        this.nameIndexes = nameIndexes;
+        this.names = names;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.edgeTypes = edgeTypes;
+        int vertexCount = categories.length;
+        this.outOffsets = new int[vertexCount + 1];
+        this.outEdges = new int[edgeSources.length];
+        this.inOffsets = new int[vertexCount + 1];
+        this.inEdges = new int[edgeSources.length];
+        fillRows(edgeSources, outOffsets, outEdges);
+        fillRows(edgeTargets, inOffsets, inEdges);
+        this.depthFirstOrder = computeDepthFirstOrder();
+        this.parents = new int[vertexCount];
+        this.subtreeHashes = new long[vertexCount];
+        this.subtreeSizes = new int[vertexCount];
+        computeSubtrees();
+    }
+
+    // Counting sort of the edges by their end, keeping the order of insertion within a row
+    private static void fillRows(int[] ends, int[] offsets, int[] rows) {
+        for (int end : ends) {
+            offsets[end + 1]++;
+        }
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int e = 0; e < ends.length; e++) {
+            rows[next[ends[e]]++] = e;
+        }
+    }
+
+    /**
+     * Build the graph of a model straight from its JSON, with the nodes, edges and categories of
+     * {@link MakeCompleteGraph#buildGraphStructure(JsonObject, String)} but without any {@link Node} object.
+     */
+    public static CompactModelGraph fromJson(JsonObject jsonObject) {
+        Builder builder = new Builder();
+        String nodePath = "componentInstance.0";
+        int root = builder.addNode(jsonObject.getString("name"), resolveCategory(jsonObject), nodePath);
+        builder.processInstances(jsonObject, root, nodePath);
+        builder.processConnectionInstances(jsonObject);
+        return builder.build(jsonObject.getString("name"));
+    }
+
+    // The compact form of a JGraphT graph, with its vertices and edges in the order of the graph
+    public static CompactModelGraph of(String name, Graph<Node, Connection> graph) {
+        Builder builder = new Builder();
+        Map<Node, Integer> indexes = new HashMap<>();
+        for (Node node : graph.vertexSet()) {
+            indexes.put(node, builder.addNode(node.getName(), node.getCategory(), null));
+        }
+        for (Connection edge : graph.edgeSet()) {
+            builder.addEdge(indexes.get(graph.getEdgeSource(edge)), indexes.get(graph.getEdgeTarget(edge)), edge.getType());
+        }
+        return builder.build(name);
+    }
+
+    // Builds the graph in the order MakeCompleteGraph adds the vertices and edges
+    private static final class Builder {
+        private final List<Node.Category> categories = new ArrayList<>();
+        private final List<Integer> nameIndexes = new ArrayList<>();
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<String, Integer> nodePaths = new HashMap<>();
+        private final Set<Long> edges = new HashSet<>();
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private byte[] types = new byte[16];
+        private int edgeCount;
+
+        int addNode(String name, Node.Category category, String nodePath) {
+            int node = categories.size();
+            categories.add(category);
+            Integer nameIndex = names.get(name);
+            if (nameIndex == null) {
+                nameIndex = names.size();
+                names.put(name, nameIndex);
+            }
+            nameIndexes.add(nameIndex);
+            if (nodePath != null) {
+                nodePaths.put(nodePath, node);
+            }
+            return node;
+        }
+
+        // Like DefaultDirectedGraph.addEdge: a second edge between the same two nodes in the same direction is ignored
+        void addEdge(int source, int target, Connection.ConnectionType type) {
+            if (!edges.add(((long) source << 32) | target)) {
+                return;
+            }
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, 2 * edgeCount);
+                targets = Arrays.copyOf(targets, 2 * edgeCount);
+                types = Arrays.copyOf(types, 2 * edgeCount);
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            types[edgeCount++] = (byte) type.ordinal();
+        }
+
+        void processInstances(JsonObject jsonObject, int parent, String parentPath) {
+            processChildren(jsonObject, "componentInstance", parent, parentPath);
+            processChildren(jsonObject, "featureInstance", parent, parentPath);
+        }
+
+        private void processChildren(JsonObject jsonObject, String key, int parent, String parentPath) {
+            if (!jsonObject.containsKey(key)) {
+                return;
+            }
+            JsonValue children = jsonObject.get(key);
+            if (children instanceof JsonArray) {
+                JsonArray array = (JsonArray) children;
+                for (int i = 0; i < array.size(); i++) {
+                    addChild(array.getJsonObject(i), parent, parentPath + "/" + key + "." + i);
+                }
+            } else if (children instanceof JsonObject) {
+                addChild((JsonObject) children, parent, parentPath + "/" + key + ".0");
+            }
+        }
+
+        private void addChild(JsonObject instanceObject, int parent, String nodePath) {
+            Node.Category category = resolveCategory(instanceObject);
+            if (Node.typeOf(category) == Node.Type.unknown) {
+                category = Node.Category.unknown;
+            }
+            int node = addNode(instanceObject.getString("name"), category, nodePath);
+            addEdge(parent, node, Node.typeOf(category) == Node.Type.feature ? Connection.ConnectionType.feature : Connection.ConnectionType.father);
+            processInstances(instanceObject, node, nodePath);
+        }
+
+        void processConnectionInstances(JsonObject jsonObject) {
+            if (!jsonObject.containsKey("connectionInstance")) {
+                return;
+            }
+            JsonValue connections = jsonObject.get("connectionInstance");
+            if (connections instanceof JsonArray) {
+                for (JsonObject connection : ((JsonArray) connections).getValuesAs(JsonObject.class)) {
+                    addConnection(connection);
+                }
+            } else if (connections instanceof JsonObject) {
+                addConnection((JsonObject) connections);
+            }
+        }
+
+        private void addConnection(JsonObject connectionInstance) {
+            String source = "componentInstance.0/" + cleanConnectionString(connectionInstance.getString("source"));
+            String destination = "componentInstance.0/" + cleanConnectionString(connectionInstance.getString("destination"));
+            Integer sourceNode = nodePaths.get(source);
+            Integer destinationNode = nodePaths.get(destination);
+            if (sourceNode != null && destinationNode != null) {
+                addEdge(sourceNode, destinationNode, Connection.ConnectionType.connection);
+            } else {
+                logger.debug("Connection end not found: " + (sourceNode == null ? source : destination));
+            }
+        }
+
+        private static String cleanConnectionString(String connectionString) {
+            return connectionString.substring(2).replace("@", "");
+        }
+
+        CompactModelGraph build(String name) {
+            byte[] categoryCodes = new byte[categories.size()];
+            int[] nameIndexArray = new int[categories.size()];
+            for (int v = 0; v < categoryCodes.length; v++) {
+                categoryCodes[v] = (byte) categories.get(v).ordinal();
+                nameIndexArray[v] = nameIndexes.get(v);
+            }
+            String[] nameTable = new String[names.size()];
+            for (Map.Entry<String, Integer> entry : names.entrySet()) {
+                nameTable[entry.getValue()] = entry.getKey();
+            }
+            return new CompactModelGraph(name, categoryCodes, nameIndexArray, nameTable,
+                    Arrays.copyOf(sources, edgeCount), Arrays.copyOf(targets, edgeCount), Arrays.copyOf(types, edgeCount));
+        }
+    }
+
+    /*
+     * The order of DepthFirstIterator on the JGraphT graph: a stack of the discovered vertices, each visited vertex
+     * pushing the targets of its outgoing edges in order, a vertex discovered again while still waiting being moved to
+     * the top, and the remaining vertices started from in the order of the graph.
+     */
+    private int[] computeDepthFirstOrder() {
+        int vertexCount = categories.length;
+        int[] order = new int[vertexCount];
+        // 0 unseen, 1 waiting on the stack, 2 visited
+        byte[] state = new byte[vertexCount];
+        int[] stack = new int[Math.max(1, vertexCount)];
+        int top = 0;
+        int visited = 0;
+        for (int start = 0; start < vertexCount; start++) {
+            if (state[start] != 0) {
+                continue;
+            }
+            state[start] = 1;
+            stack[top++] = start;
+            while (top > 0) {
+                int v = stack[--top];
+                state[v] = 2;
+                order[visited++] = v;
+                for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+                    int w = edgeTargets[outEdges[k]];
+                    if (state[w] == 0) {
+                        state[w] = 1;
+                        stack[top++] = w;
+                    } else if (state[w] == 1) {
+                        int p = top - 1;
+                        while (stack[p] != w) {
+                            p--;
+                        }
+                        System.arraycopy(stack, p + 1, stack, p, top - 1 - p);
+                        stack[top - 1] = w;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /*
+     * The father and feature edges form the containment tree, a node being added after its parent. The hash of a
+     * subtree combines the category of its root with the sorted hashes of the subtrees of its children, components
+     * and features alike, so it does not depend on the order of the children nor on the names.
+     */
+    private void computeSubtrees() {
+        Arrays.fill(parents, -1);
+        for (int e = 0; e < edgeSources.length; e++) {
+            int target = edgeTargets[e];
+            if (edgeTypes[e] != Connection.ConnectionType.connection.ordinal() && parents[target] < 0 && edgeSources[e] < target) {
+                parents[target] = edgeSources[e];
+            }
+        }
+        long[] childHashes = new long[0];
+        for (int v = categories.length - 1; v >= 0; v--) {
+            int childCount = 0;
+            subtreeSizes[v] = 1;
+            for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+                int w = edgeTargets[outEdges[k]];
+                if (parents[w] == v && edgeTypes[outEdges[k]] != Connection.ConnectionType.connection.ordinal()) {
+                    if (childCount == childHashes.length) {
+                        childHashes = Arrays.copyOf(childHashes, Math.max(4, 2 * childCount));
+                    }
+                    childHashes[childCount++] = subtreeHashes[w];
+                    subtreeSizes[v] += subtreeSizes[w];
+                }
+            }
+            Arrays.sort(childHashes, 0, childCount);
+            long hash = mix(categories[v] + 1);
+            for (int c = 0; c < childCount; c++) {
+                hash = mix(hash * 0x100000001B3L + childHashes[c]);
+            }
+            subtreeHashes[v] = hash;
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Whether the two graphs are the same up to the order of their nodes: same containment tree, categories,
+     * connections and edge types. The root subtree hashes reject most pairs at once; otherwise the two trees are
+     * matched child by child, in the order of labels refined from the subtree hashes by the connections, and every
+     * edge is checked through that mapping, so a hash collision or an unlucky pairing only gives {@code false}.
+     */
+    public boolean isIsomorphicTo(CompactModelGraph other) {
+        int vertexCount = categories.length;
+        if (vertexCount != other.vertexCount() || edgeSources.length != other.edgeCount() || vertexCount == 0
+                || subtreeHashes[0] != other.subtreeHashes[0] || rootCount() != 1 || other.rootCount() != 1) {
+            return false;
+        }
+        long[] labels = refinedLabels();
+        long[] otherLabels = other.refinedLabels();
+        int[] mapping = new int[vertexCount];
+        Arrays.fill(mapping, -1);
+        mapping[0] = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            // Parents come first, so v is mapped already
+            int[] children = sortedChildren(v, labels);
+            int[] otherChildren = other.sortedChildren(mapping[v], otherLabels);
+            if (children.length != otherChildren.length) {
+                return false;
+            }
+            for (int c = 0; c < children.length; c++) {
+                if (labels[children[c]] != otherLabels[otherChildren[c]]) {
+                    return false;
+                }
+                mapping[children[c]] = otherChildren[c];
+            }
+        }
+        Map<Long, Byte> otherEdges = new HashMap<>();
+        for (int e = 0; e < other.edgeCount(); e++) {
+            otherEdges.put(((long) other.edgeSources[e] << 32) | other.edgeTargets[e], other.edgeTypes[e]);
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (mapping[v] < 0 || categories[v] != other.categories[mapping[v]]) {
+                return false;
+            }
+        }
+        for (int e = 0; e < edgeSources.length; e++) {
+            Byte type = otherEdges.get(((long) mapping[edgeSources[e]] << 32) | mapping[edgeTargets[e]]);
+            if (type == null || type != edgeTypes[e]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Subtree hashes refined by a few Weisfeiler-Lehman rounds over all the edges, so that identical sibling
+     * subtrees connected differently get different labels and are paired with the right copies.
+     */
+    private long[] refinedLabels() {
+        int vertexCount = categories.length;
+        long[] labels = subtreeHashes.clone();
+        long[] neighbourhood = new long[0];
+        for (int round = 0; round < REFINEMENT_ROUNDS; round++) {
+            long[] next = new long[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                int degree = degree(v);
+                if (neighbourhood.length < degree) {
+                    neighbourhood = new long[degree];
+                }
+                int n = 0;
+                for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+                    neighbourhood[n++] = mix(labels[edgeTargets[outEdges[k]]] ^ (2L * edgeTypes[outEdges[k]] + 1) * 0x9E3779B97F4A7C15L);
+                }
+                for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+                    neighbourhood[n++] = mix(labels[edgeSources[inEdges[k]]] ^ (2L * edgeTypes[inEdges[k]] + 2) * 0x9E3779B97F4A7C15L);
+                }
+                Arrays.sort(neighbourhood, 0, n);
+                long hash = labels[v];
+                for (int k = 0; k < n; k++) {
+                    hash = mix(hash * 0x100000001B3L + neighbourhood[k]);
+                }
+                next[v] = hash;
+            }
+            labels = next;
+        }
+        return labels;
+    }
+
+    // The children of v in the containment tree, by label
+    private int[] sortedChildren(int v, long[] labels) {
+        List<Integer> children = new ArrayList<>();
+        for (int k = outOffsets[v]; k < outOffsets[v + 1]; k++) {
+            int w = edgeTargets[outEdges[k]];
+            if (parents[w] == v && edgeTypes[outEdges[k]] != Connection.ConnectionType.connection.ordinal()) {
+                children.add(w);
+            }
+        }
+        children.sort(Comparator.comparingLong((Integer w) -> labels[w]));
+        return children.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // A JGraphT copy of the graph, for the visualization
+    public Graph<Node, Connection> toGraph() {
+        Graph<Node, Connection> graph = new DefaultDirectedGraph<>(Connection.class);
+        Node[] nodes = new Node[categories.length];
+        for (int v = 0; v < nodes.length; v++) {
+            nodes[v] = new Node(getNodeName(v), getCategory(v));
+            graph.addVertex(nodes[v]);
+        }
+        for (int e = 0; e < edgeSources.length; e++) {
+            graph.addEdge(nodes[edgeSources[e]], nodes[edgeTargets[e]], new Connection(getEdgeType(e)));
+        }
+        return graph;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int vertexCount() {
+        return categories.length;
+    }
+
+    public int edgeCount() {
+        return edgeSources.length;
+    }
+
+    public Node.Category getCategory(int v) {
+        return CATEGORIES[categories[v]];
+    }
+
+    public int getCategoryCode(int v) {
+        return categories[v];
+    }
+
+    public String getNodeName(int v) {
+        return names[nameIndexes[v]];
+    }
+
+    public int getEdgeSource(int e) {
+        return edgeSources[e];
+    }
+
+    public int getEdgeTarget(int e) {
+        return edgeTargets[e];
+    }
+
+    public Connection.ConnectionType getEdgeType(int e) {
+        return CONNECTION_TYPES[edgeTypes[e]];
+    }
+
+    public int getEdgeTypeCode(int e) {
+        return edgeTypes[e];
+    }
+
+    // The outgoing edges of v are outEdge(k) for outStart(v) <= k < outEnd(v), in the order they were added
+    public int outStart(int v) {
+        return outOffsets[v];
+    }
+
+    public int outEnd(int v) {
+        return outOffsets[v + 1];
+    }
+
+    public int outEdge(int k) {
+        return outEdges[k];
+    }
+
+    // The incoming edges of v, likewise
+    public int inStart(int v) {
+        return inOffsets[v];
+    }
+
+    public int inEnd(int v) {
+        return inOffsets[v + 1];
+    }
+
+    public int inEdge(int k) {
+        return inEdges[k];
+    }
+
+    public int degree(int v) {
+        return outOffsets[v + 1] - outOffsets[v] + inOffsets[v + 1] - inOffsets[v];
+    }
+
+    // The nodes in the order DepthFirstIterator visits the JGraphT graph
+    public int depthFirstNode(int k) {
+        return depthFirstOrder[k];
+    }
+
+    // The parent of v in the containment tree, -1 for a root
+    public int getParent(int v) {
+        return parents[v];
+    }
+
+    // Hash of the subtree of v, equal for subtrees with the same categories whatever the order of the children
+    public long getSubtreeHash(int v) {
+        return subtreeHashes[v];
+    }
+
+    // Number of nodes in the subtree of v
+    public int getSubtreeSize(int v) {
+        return subtreeSizes[v];
+    }
+
+    // Number of nodes without a parent, 1 for the graph of a model
+    public int rootCount() {
+        int roots = 0;
+        for (int parent : parents) {
+            if (parent < 0) {
+                roots++;
+            }
+        }
+        return roots;
+    }
+}
@@ -11,6 +11,7 @@ import org.models.xmi.json.visualize.JGraphXVisualization;
 import javax.json.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,12 +42,24 @@ public class MakeCompleteGraph {
 
     @NotNull
     public static Model buildGraphStructure(String json, String fileName) {
-        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+        return buildGraphStructure(new StringReader(json), fileName);
+    }
+
+    // Builds the graph straight from a character stream (e.g. a FileReader), without an intermediate String
+    @NotNull
+    public static Model buildGraphStructure(Reader source, String fileName) {
+        try (JsonReader reader = Json.createReader(source)) {
             JsonObject jsonObject = reader.readObject();
             return buildStructure(jsonObject, fileName);
         }
     }
 
+    // Builds the graph from an already parsed model, without serializing and parsing it again
+    @NotNull
+    public static Model buildGraphStructure(JsonObject jsonObject, String fileName) {
+        return buildStructure(jsonObject, fileName);
+    }
+
     @NotNull
     @Contract("_, _ -> new")
     private static Model buildStructure(JsonObject jsonObject, String fileName) {
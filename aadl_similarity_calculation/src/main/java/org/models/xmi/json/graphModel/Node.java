@@ -19,7 +19,7 @@ public class Node {
         this.id = ID_GENERATOR.getAndIncrement();
         this.name = category.toString();
         this.category = category;
-        this.type = setTypeFromCategory(category);
+        this.type = typeOf(category);
     }
 
     public void setType(Type feature) {
@@ -78,7 +78,7 @@ public class Node {
         this.id = ID_GENERATOR.getAndIncrement();
         this.name = name + " (" + id + ")";
         this.category = category;
-        this.type = setTypeFromCategory(category);
+        this.type = typeOf(category);
     }
 
     private void setTypeFromCategory() {
@@ -119,7 +119,9 @@ public class Node {
                 this.type = Type.unknown;
         }
     }
-    private Type setTypeFromCategory(Category category) {
+
+    // The type implied by a category, as set by the constructors
+    public static Type typeOf(Category category) {
         Type type;
         switch (category) {
             case process:
@@ -0,0 +1,37 @@
+package org.models.xmi.json.matrix;
+
+/**
+ * View of a matrix of models as a matrix of classes of models with identical results: cell (a, b) is read from the
+ * first models of the two classes and written to every pair of a model of a and a model of b.
+ */
+public class FanOutSimilarityMatrix implements SimilarityMatrix {
+    private final SimilarityMatrix target;
+    private final int[][] classes;
+
+    public FanOutSimilarityMatrix(SimilarityMatrix target, int[][] classes) {
+        this.target = target;
+        this.classes = classes;
+    }
+
+    @Override
+    public int size() {
+        return classes.length;
+    }
+
+    @Override
+    public double get(int a, int b) {
+        return target.get(classes[a][0], classes[b][0]);
+    }
+
+    @Override
+    public void set(int a, int b, double value) {
+        for (int i : classes[a]) {
+            for (int j : classes[b]) {
+                // Within a class each unordered pair once
+                if (a != b || i <= j) {
+                    target.set(i, j, value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.models.xmi.json.matrix;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes similarity matrices in the NumPy {@code .npy} format (version 1.0), for the clustering stage to load with
+ * {@code numpy.load(path, mmap_mode="r")} instead of parsing a CSV.
+ */
+public class NpyWriter {
+
+    private final static byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+
+    // The full N x N matrix as little-endian float64
+    public static void writeMatrix(SimilarityMatrixView matrix, File file) throws IOException {
+        int size = matrix.size();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeHeader(out, "<f8", "(" + size + ", " + size + ")");
+            double[] row = new double[size];
+            ByteBuffer buffer = ByteBuffer.allocate(size * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i++) {
+                matrix.row(i, row);
+                buffer.clear();
+                buffer.asDoubleBuffer().put(row);
+                out.write(buffer.array());
+            }
+        }
+    }
+
+    /**
+     * The condensed distance vector of the matrix as little-endian float32, ready for
+     * {@code scipy.cluster.hierarchy.linkage}: the distances 1 - s of the pairs i < j in row-major order, with the
+     * similarities s clipped to [0, 1] as the clustering stage does.
+     */
+    public static void writeCondensedDistance(SimilarityMatrixView matrix, File file) throws IOException {
+        int size = matrix.size();
+        long length = (long) size * (size - 1) / 2;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeHeader(out, "<f4", "(" + length + ",)");
+            double[] row = new double[size];
+            ByteBuffer buffer = ByteBuffer.allocate(size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size - 1; i++) {
+                matrix.row(i, row);
+                buffer.clear();
+                for (int j = i + 1; j < size; j++) {
+                    double similarity = Math.min(1.0, Math.max(0.0, row[j]));
+                    buffer.putFloat((float) (1.0 - similarity));
+                }
+                out.write(buffer.array(), 0, buffer.position());
+            }
+        }
+    }
+
+    // A rows x cols array of little-endian int32, from its row-major values
+    public static void writeInt32(int[] values, int rows, int cols, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeHeader(out, "<i4", "(" + rows + ", " + cols + ")");
+            ByteBuffer buffer = ByteBuffer.allocate(cols * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int r = 0; r < rows; r++) {
+                buffer.clear();
+                buffer.asIntBuffer().put(values, r * cols, cols);
+                out.write(buffer.array());
+            }
+        }
+    }
+
+    // A rows x cols array of little-endian float32, from its row-major values
+    public static void writeFloat32(float[] values, int rows, int cols, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            writeHeader(out, "<f4", "(" + rows + ", " + cols + ")");
+            ByteBuffer buffer = ByteBuffer.allocate(cols * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int r = 0; r < rows; r++) {
+                buffer.clear();
+                buffer.asFloatBuffer().put(values, r * cols, cols);
+                out.write(buffer.array());
+            }
+        }
+    }
+
+    // The names of the rows, one per line, in matrix order
+    public static void writeNames(List<String> modelNames, File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
+            for (String modelName : modelNames) {
+                writer.write(modelName);
+                writer.write("\n");
+            }
+        }
+    }
+
+    // The header is padded with spaces so that the data starts on a 64-byte boundary
+    private static void writeHeader(OutputStream out, String descr, String shape) throws IOException {
+        StringBuilder header = new StringBuilder("{'descr': '" + descr + "', 'fortran_order': False, 'shape': " + shape + ", }");
+        int total = MAGIC.length + 2 + header.length() + 1;
+        while (total % 64 != 0) {
+            header.append(' ');
+            total++;
+        }
+        header.append('\n');
+        byte[] bytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(MAGIC);
+        out.write(bytes.length & 0xFF);
+        out.write((bytes.length >> 8) & 0xFF);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,144 @@
+package org.models.xmi.json.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Symmetric matrix stored as its packed upper triangle (diagonal included) outside of the Java heap.
+ * <p>
+ * Only N(N+1)/2 values are kept, as doubles or floats, in direct buffers or in buffers memory-mapped from a file.
+ * The triangle is split in chunks of at most 1 GB, since a single buffer cannot address more than 2 GB.
+ * Cells are read and written through {@link VarHandle}s with opaque access: workers writing distinct cells
+ * need no lock, and a reader never sees a half-written value.
+ */
+public class PackedSimilarityMatrix implements SimilarityMatrix {
+
+    public enum Precision {
+        DOUBLE(Double.BYTES, MethodHandles.byteBufferViewVarHandle(double[].class, ByteOrder.nativeOrder())),
+        FLOAT(Float.BYTES, MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.nativeOrder()));
+
+        private final int bytes;
+        private final VarHandle handle;
+
+        Precision(int bytes, VarHandle handle) {
+            this.bytes = bytes;
+            this.handle = handle;
+        }
+    }
+
+    private final static int CHUNK_BYTES_LOG2 = 30;
+
+    private final int size;
+    private final Precision precision;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final ByteBuffer[] chunks;
+
+    private PackedSimilarityMatrix(int size, Precision precision, ByteBuffer[] chunks) {
+        this.size = size;
+        this.precision = precision;
+        this.chunkShift = CHUNK_BYTES_LOG2 - Integer.numberOfTrailingZeros(precision.bytes);
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.chunks = chunks;
+    }
+
+    // A zero-filled matrix in direct memory; mind -XX:MaxDirectMemorySize for large corpora
+    public static PackedSimilarityMatrix offHeap(int size, Precision precision) {
+        long bytes = packedLength(size) * precision.bytes;
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(bytes)];
+        for (int c = 0; c < chunks.length; c++) {
+            long chunkBytes = Math.min(1L << CHUNK_BYTES_LOG2, bytes - ((long) c << CHUNK_BYTES_LOG2));
+            chunks[c] = ByteBuffer.allocateDirect((int) chunkBytes).order(ByteOrder.nativeOrder());
+        }
+        return new PackedSimilarityMatrix(size, precision, chunks);
+    }
+
+    // A zero-filled matrix memory-mapped from a new file, so the OS pages it in and out as needed
+    public static PackedSimilarityMatrix mapped(File file, int size, Precision precision) throws IOException {
+        long bytes = packedLength(size) * precision.bytes;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to replace the matrix file: " + file);
+        }
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(bytes)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(bytes);
+            for (int c = 0; c < chunks.length; c++) {
+                long position = (long) c << CHUNK_BYTES_LOG2;
+                long chunkBytes = Math.min(1L << CHUNK_BYTES_LOG2, bytes - position);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes).order(ByteOrder.nativeOrder());
+            }
+        }
+        return new PackedSimilarityMatrix(size, precision, chunks);
+    }
+
+    private static long packedLength(int size) {
+        return (long) size * (size + 1) / 2;
+    }
+
+    private static int chunkCount(long bytes) {
+        return (int) Math.max(1, (bytes + (1L << CHUNK_BYTES_LOG2) - 1) >>> CHUNK_BYTES_LOG2);
+    }
+
+    // Position of (i, j), i <= j, in the row-major packed upper triangle
+    private long index(int i, int j) {
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        if (i < 0 || j >= size) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") out of a " + size + " x " + size + " matrix");
+        }
+        return (long) i * size - (long) i * (i - 1) / 2 + (j - i);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        long index = index(i, j);
+        ByteBuffer chunk = chunks[(int) (index >>> chunkShift)];
+        int offset = (int) (index & chunkMask) * precision.bytes;
+        if (precision == Precision.DOUBLE) {
+            return (double) precision.handle.getOpaque(chunk, offset);
+        }
+        return (float) precision.handle.getOpaque(chunk, offset);
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        long index = index(i, j);
+        ByteBuffer chunk = chunks[(int) (index >>> chunkShift)];
+        int offset = (int) (index & chunkMask) * precision.bytes;
+        if (precision == Precision.DOUBLE) {
+            precision.handle.setOpaque(chunk, offset, value);
+        } else {
+            precision.handle.setOpaque(chunk, offset, (float) value);
+        }
+    }
+
+    // The cells j >= i of a row are contiguous, the others are read down column i
+    @Override
+    public void row(int i, double[] out) {
+        for (int j = 0; j < i; j++) {
+            out[j] = get(j, i);
+        }
+        for (int j = i; j < size; j++) {
+            out[j] = get(i, j);
+        }
+    }
+}
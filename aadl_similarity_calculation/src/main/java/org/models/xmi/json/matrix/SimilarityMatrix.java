@@ -0,0 +1,12 @@
+package org.models.xmi.json.matrix;
+
+/**
+ * A symmetric N x N matrix of similarities between the models of a corpus, filled by the measures.
+ * <p>
+ * Implementations must accept concurrent {@link #set} calls on distinct cells from the worker threads of a run.
+ */
+public interface SimilarityMatrix extends SimilarityMatrixView {
+
+    // Sets both (i, j) and (j, i)
+    void set(int i, int j, double value);
+}
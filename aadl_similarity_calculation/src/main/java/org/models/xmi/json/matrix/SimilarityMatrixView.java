@@ -0,0 +1,20 @@
+package org.models.xmi.json.matrix;
+
+/**
+ * Read access to a symmetric N x N matrix of similarities between the models of a corpus, all the exporters need.
+ * Matrices derived from others, like the {@link WeightedSimilarityMatrix}, are only views; the matrices the measures
+ * fill are {@link SimilarityMatrix}.
+ */
+public interface SimilarityMatrixView {
+
+    int size();
+
+    double get(int i, int j);
+
+    // Copies row i into out, which must hold at least size() values
+    default void row(int i, double[] out) {
+        for (int j = 0; j < size(); j++) {
+            out[j] = get(i, j);
+        }
+    }
+}
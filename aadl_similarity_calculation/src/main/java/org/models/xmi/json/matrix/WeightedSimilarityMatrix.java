@@ -0,0 +1,39 @@
+package org.models.xmi.json.matrix;
+
+/**
+ * Weighted average of a structural and a semantic matrix, computed on demand instead of being stored.
+ */
+public class WeightedSimilarityMatrix implements SimilarityMatrixView {
+    private final SimilarityMatrixView structural;
+    private final SimilarityMatrixView semantic;
+    private final double w_struct;
+    private final double w_semantic;
+
+    public WeightedSimilarityMatrix(SimilarityMatrixView structural, SimilarityMatrixView semantic, double w_struct, double w_semantic) {
+        if (structural.size() != semantic.size()) {
+            throw new IllegalArgumentException("The matrices have different sizes: " + structural.size() + " and " + semantic.size());
+        }
+        this.structural = structural;
+        this.semantic = semantic;
+        this.w_struct = w_struct;
+        this.w_semantic = w_semantic;
+    }
+
+    @Override
+    public int size() {
+        return structural.size();
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return w_struct * structural.get(i, j) + w_semantic * semantic.get(i, j);
+    }
+
+    @Override
+    public void row(int i, double[] out) {
+        structural.row(i, out);
+        for (int j = 0; j < size(); j++) {
+            out[j] = w_struct * out[j] + w_semantic * semantic.get(i, j);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.graphModel.Connection;
+import org.models.xmi.json.graphModel.Node;
+
+import java.util.Arrays;
+
+/**
+ * Node category counts and edge signature counts of a model graph, from which an upper bound of the structural
+ * similarity of two models is computed without matching them, as well as their {@link JaccardDistance}.
+ * <p>
+ * Both {@link Similarity#findMaximumCommonSubgraph} and {@link McSplit} only pair nodes of the same category and
+ * edges of the same (type, source category, target category) signature, so the common subgraph has at most the sum
+ * over the categories, and over the signatures, of the smaller of the two counts.
+ */
+public final class CategoryProfile {
+
+    private final static int CATEGORIES = Node.Category.values().length;
+    final static int SIGNATURES = Connection.ConnectionType.values().length * CATEGORIES * CATEGORIES;
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final int[] categoryCounts;
+    // Sorted signatures and their counts, most models only use a few of them
+    private final int[] signatures;
+    private final int[] signatureCounts;
+
+    private CategoryProfile(int vertexCount, int edgeCount, int[] categoryCounts, int[] signatures, int[] signatureCounts) {
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeCount;
+        this.categoryCounts = categoryCounts;
+        this.signatures = signatures;
+        this.signatureCounts = signatureCounts;
+    }
+
+    public static CategoryProfile of(CompactModelGraph graph) {
+        int[] categoryCounts = new int[CATEGORIES];
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            categoryCounts[graph.getCategoryCode(v)]++;
+        }
+        int[] all = new int[graph.edgeCount()];
+        for (int e = 0; e < all.length; e++) {
+            all[e] = signature(graph, e);
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int k = 0; k < all.length; k++) {
+            if (k == 0 || all[k] != all[k - 1]) {
+                distinct++;
+            }
+        }
+        int[] signatures = new int[distinct];
+        int[] signatureCounts = new int[distinct];
+        int s = -1;
+        for (int k = 0; k < all.length; k++) {
+            if (k == 0 || all[k] != all[k - 1]) {
+                signatures[++s] = all[k];
+            }
+            signatureCounts[s]++;
+        }
+        return new CategoryProfile(graph.vertexCount(), all.length, categoryCounts, signatures, signatureCounts);
+    }
+
+    // Index of an edge signature in [0, SIGNATURES)
+    static int signature(CompactModelGraph graph, int edge) {
+        return (graph.getEdgeTypeCode(edge) * CATEGORIES + graph.getCategoryCode(graph.getEdgeSource(edge))) * CATEGORIES
+                + graph.getCategoryCode(graph.getEdgeTarget(edge));
+    }
+
+    /**
+     * Upper bound of the structural similarity that {@link Similarity} computes for the two models.
+     *
+     * @param other       the profile of the other model
+     * @param compareMode "max", "min" or "average", as in the configuration
+     * @return a value the structural similarity of the pair cannot exceed
+     */
+    public double structuralUpperBound(CategoryProfile other, String compareMode) {
+        int commonEdges = commonEdges(other);
+        // Without a common edge every common node is isolated and removed, the similarity is 0
+        if (commonEdges == 0) {
+            return 0.0;
+        }
+        int commonVertices = commonVertices(other);
+        double nodeMax = (double) commonVertices / Math.max(vertexCount, other.vertexCount);
+        double edgeMax = (double) commonEdges / Math.max(edgeCount, other.edgeCount);
+        double nodeMin = (double) commonVertices / Math.min(vertexCount, other.vertexCount);
+        double edgeMin = (double) commonEdges / Math.min(edgeCount, other.edgeCount);
+        double bound = switch (compareMode) {
+            case "max" -> (nodeMax + edgeMax) / 2;
+            case "min" -> (nodeMin + edgeMin) / 2;
+            default -> ((nodeMax + nodeMin) / 2 + (edgeMax + edgeMin) / 2) / 2;
+        };
+        return Math.min(1.0, bound);
+    }
+
+    /**
+     * Mean of the Jaccard distances of the node category multisets and of the edge signature multisets of the two
+     * models, the size of a multiset intersection being the sum of the smaller counts. Two empty multisets are at
+     * distance 0.
+     */
+    public double jaccardDistance(CategoryProfile other) {
+        return (jaccardDistance(commonVertices(other), vertexCount, other.vertexCount)
+                + jaccardDistance(commonEdges(other), edgeCount, other.edgeCount)) / 2;
+    }
+
+    private static double jaccardDistance(int intersection, int size1, int size2) {
+        int union = size1 + size2 - intersection;
+        return union == 0 ? 0.0 : 1.0 - (double) intersection / union;
+    }
+
+    // Size of the intersection of the node category multisets
+    private int commonVertices(CategoryProfile other) {
+        int commonVertices = 0;
+        for (int c = 0; c < CATEGORIES; c++) {
+            commonVertices += Math.min(categoryCounts[c], other.categoryCounts[c]);
+        }
+        return commonVertices;
+    }
+
+    // Size of the intersection of the edge signature multisets
+    private int commonEdges(CategoryProfile other) {
+        int commonEdges = 0;
+        for (int a = 0, b = 0; a < signatures.length && b < other.signatures.length; ) {
+            if (signatures[a] < other.signatures[b]) {
+                a++;
+            } else if (signatures[a] > other.signatures[b]) {
+                b++;
+            } else {
+                commonEdges += Math.min(signatureCounts[a++], other.signatureCounts[b++]);
+            }
+        }
+        return commonEdges;
+    }
+}
@@ -0,0 +1,125 @@
+package org.models.xmi.json.similarityMeasure;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded token to vector cache in front of a word embedding model, safe for concurrent use.
+ * <p>
+ * The tokens are spread over independently locked stripes, each an access-ordered map that evicts its least
+ * recently used token when full, so threads looking up different tokens rarely wait on each other. In FLOAT32 the
+ * vectors are kept as they are and a lookup returns the cached array itself, which callers must not modify. In a
+ * lower {@link EmbeddingPrecision} they are kept encoded, so more tokens fit in the same memory, and each lookup
+ * returns a new decoded copy. A token the model has no vector for is cached as an empty array.
+ */
+public final class EmbeddingCache {
+
+    private static final int STRIPES = 16;
+    private static final float[] NO_VECTOR = new float[0];
+
+    private final EmbeddingPrecision precision;
+    private final WordVectors source;
+    // The vector of a miss, before it is encoded
+    private final ThreadLocal<float[]> missBuffer;
+    // A float[] per token in FLOAT32, otherwise its encoded byte[]
+    private final Map<String, Object>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity  the maximum number of cached tokens, at least 1
+     * @param precision the precision the vectors are kept in
+     * @param source    looks up the vector of a token on a miss
+     */
+    @SuppressWarnings("unchecked")
+    public EmbeddingCache(int capacity, EmbeddingPrecision precision, WordVectors source) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.precision = precision;
+        this.source = source;
+        this.missBuffer = ThreadLocal.withInitial(() -> new float[source.dimension()]);
+        int stripeCapacity = Math.max(1, capacity / STRIPES);
+        this.stripes = new Map[STRIPES];
+        for (int s = 0; s < STRIPES; s++) {
+            stripes[s] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    if (size() > stripeCapacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    // The vector of a token, an empty array when there is none; in FLOAT32 the cached array, not to be modified
+    public float[] get(String token) {
+        Map<String, Object> stripe = stripes[(token.hashCode() & 0x7FFFFFFF) % STRIPES];
+        Object entry;
+        synchronized (stripe) {
+            entry = stripe.get(token);
+        }
+        if (entry != null) {
+            hits.increment();
+            return vector(entry);
+        }
+        misses.increment();
+        // Looked up outside the lock; two threads missing the same token both load it and keep the first one
+        Object loaded;
+        if (precision == EmbeddingPrecision.FLOAT32) {
+            float[] vector = new float[source.dimension()];
+            loaded = source.vector(token, vector) ? vector : NO_VECTOR;
+        } else {
+            float[] buffer = missBuffer.get();
+            loaded = source.vector(token, buffer) ? precision.encode(buffer) : new byte[0];
+        }
+        Object cached;
+        synchronized (stripe) {
+            cached = stripe.putIfAbsent(token, loaded);
+        }
+        return vector(cached != null ? cached : loaded);
+    }
+
+    private float[] vector(Object entry) {
+        return entry instanceof float[] ? (float[]) entry : precision.decode((byte[]) entry);
+    }
+
+    public EmbeddingPrecision getPrecision() {
+        return precision;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, Object> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long misses = getMisses();
+        return size() + " tokens cached, " + hits + " hits, " + misses + " misses ("
+                + (hits + misses == 0 ? 0 : 100 * hits / (hits + misses)) + "% hits), " + getEvictions() + " evictions";
+    }
+}
@@ -0,0 +1,150 @@
+package org.models.xmi.json.similarityMeasure;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The precision word vectors are held in, in the embedding cache and store, as set by "embeddingPrecision".
+ * <p>
+ * An encoded vector is little endian. FLOAT32 keeps the floats as they are. FLOAT16 and INT8 start with the scale of
+ * the vector, its largest absolute value, followed by each value divided by the scale as a half precision float, or
+ * rounded to one of the 255 steps of [-1, 1] as a signed byte. A 300 dimension vector takes 1200, 604 or 304 bytes.
+ */
+public enum EmbeddingPrecision {
+    FLOAT32,
+    FLOAT16,
+    INT8;
+
+    public static EmbeddingPrecision of(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    // The bytes of an encoded vector
+    public int bytes(int dimension) {
+        return switch (this) {
+            case FLOAT32 -> 4 * dimension;
+            case FLOAT16 -> 4 + 2 * dimension;
+            case INT8 -> 4 + dimension;
+        };
+    }
+
+    // The dimension of an encoded vector of the given bytes
+    public int dimension(int bytes) {
+        return switch (this) {
+            case FLOAT32 -> bytes / 4;
+            case FLOAT16 -> bytes == 0 ? 0 : (bytes - 4) / 2;
+            case INT8 -> bytes == 0 ? 0 : bytes - 4;
+        };
+    }
+
+    // Writes the vector at a position of a little endian buffer, in bytes(vector.length) bytes
+    public void encode(float[] vector, ByteBuffer out, int position) {
+        if (this == FLOAT32) {
+            for (int i = 0; i < vector.length; i++) {
+                out.putFloat(position + 4 * i, vector[i]);
+            }
+            return;
+        }
+        float scale = 0.0f;
+        for (float value : vector) {
+            scale = Math.max(scale, Math.abs(value));
+        }
+        out.putFloat(position, scale);
+        for (int i = 0; i < vector.length; i++) {
+            float value = scale == 0.0f ? 0.0f : vector[i] / scale;
+            if (this == FLOAT16) {
+                out.putShort(position + 4 + 2 * i, toHalf(value));
+            } else {
+                out.put(position + 4 + i, (byte) Math.round(value * 127));
+            }
+        }
+    }
+
+    // Reads out.length values of a vector written by encode
+    public void decode(ByteBuffer in, int position, float[] out) {
+        if (this == FLOAT32) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] = in.getFloat(position + 4 * i);
+            }
+            return;
+        }
+        float scale = in.getFloat(position);
+        for (int i = 0; i < out.length; i++) {
+            if (this == FLOAT16) {
+                out[i] = fromHalf(in.getShort(position + 4 + 2 * i)) * scale;
+            } else {
+                out[i] = in.get(position + 4 + i) * (scale / 127);
+            }
+        }
+    }
+
+    // An empty vector is encoded as an empty array
+    public byte[] encode(float[] vector) {
+        if (vector.length == 0) {
+            return new byte[0];
+        }
+        byte[] encoded = new byte[bytes(vector.length)];
+        encode(vector, ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN), 0);
+        return encoded;
+    }
+
+    public float[] decode(byte[] encoded) {
+        float[] vector = new float[dimension(encoded.length)];
+        if (vector.length > 0) {
+            decode(ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN), 0, vector);
+        }
+        return vector;
+    }
+
+    // The vector as it is after being encoded and decoded
+    public float[] round(float[] vector) {
+        return this == FLOAT32 ? vector : decode(encode(vector));
+    }
+
+    // IEEE 754 half precision, rounded to nearest even
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int magnitude = bits & 0x7FFFFFFF;
+        if (magnitude > 0x7F800000) {
+            return (short) (sign | 0x7E00);
+        }
+        if (magnitude >= 0x477FF000) {
+            // 65520 and above round to infinity
+            return (short) (sign | 0x7C00);
+        }
+        if (magnitude >= 0x38800000) {
+            // A normal half: rebias the exponent and round the 13 dropped mantissa bits
+            int rounded = magnitude + 0xFFF + ((magnitude >>> 13) & 1);
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        }
+        if (magnitude < 0x33000000) {
+            return (short) sign;
+        }
+        // A subnormal half, a multiple of 2^-24
+        int exponent = magnitude >>> 23;
+        int mantissa = (magnitude & 0x7FFFFF) | 0x800000;
+        int shift = 126 - exponent;
+        int half = mantissa >>> shift;
+        int remainder = mantissa & ((1 << shift) - 1);
+        int midpoint = 1 << (shift - 1);
+        if (remainder > midpoint || (remainder == midpoint && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,330 @@
+package org.models.xmi.json.similarityMeasure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Word vectors of a fixed vocabulary, read from a memory-mapped file, so a run only pages in the vectors of the
+ * tokens it looks up instead of loading the whole fastText model.
+ * <p>
+ * The store can also hold the rows of the character n-gram buckets of the model that its tokens use. A token that
+ * is not in the vocabulary then gets the average of the rows of those of its n-grams that are in the store, as
+ * {@link FastTextModel} does with all of them: the vectors of new names are approximated instead of left out.
+ * <p>
+ * The file is little endian: a header (magic, version, dimension, token count, table size, minn, maxn, bucket count,
+ * n-gram count, precision), an open addressing hash table of int slots holding the row of a token plus one, 0 for an
+ * empty slot, indexed by the FNV-1a hash of the UTF-8 token, then the offsets of the tokens in the token bytes, the
+ * token bytes padded to 4 bytes, the rows encoded in the {@link EmbeddingPrecision} of the store and padded to 4
+ * bytes, the sorted n-gram buckets and their rows. Lookups only use absolute reads of the buffer and are safe from
+ * several threads.
+ */
+public final class EmbeddingStore implements WordVectors {
+
+    private static final int MAGIC = 0x424D4541;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 40;
+
+    /**
+     * The n-gram rows of a store and the parameters of the model they were hashed with.
+     *
+     * @param rows the row of each bucket of {@link FastTextModel#subwordBuckets}
+     */
+    public record Subwords(int minn, int maxn, int bucket, Map<Integer, float[]> rows) {
+    }
+
+    private final ByteBuffer buffer;
+    private final int dimension;
+    private final int count;
+    private final int tableSize;
+    private final int offsetsStart;
+    private final int bytesStart;
+    private final int vectorsStart;
+    private final int minn;
+    private final int maxn;
+    private final int bucket;
+    private final int ngramCount;
+    private final int ngramBucketsStart;
+    private final int ngramVectorsStart;
+    private final EmbeddingPrecision precision;
+    private final int rowBytes;
+    private final LongAdder unknownTokens = new LongAdder();
+    private final LongAdder approximatedTokens = new LongAdder();
+
+    private EmbeddingStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an embedding store, or of another version");
+        }
+        this.dimension = buffer.getInt(8);
+        this.count = buffer.getInt(12);
+        this.tableSize = buffer.getInt(16);
+        this.minn = buffer.getInt(20);
+        this.maxn = buffer.getInt(24);
+        this.bucket = buffer.getInt(28);
+        this.ngramCount = buffer.getInt(32);
+        this.precision = EmbeddingPrecision.values()[buffer.getInt(36)];
+        this.rowBytes = precision.bytes(dimension);
+        this.offsetsStart = HEADER_SIZE + 4 * tableSize;
+        this.bytesStart = offsetsStart + 4 * (count + 1);
+        this.vectorsStart = bytesStart + pad(buffer.getInt(offsetsStart + 4 * count));
+        this.ngramBucketsStart = vectorsStart + pad(count * rowBytes);
+        this.ngramVectorsStart = ngramBucketsStart + 4 * ngramCount;
+    }
+
+    public static EmbeddingStore open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The embedding store " + path + " is larger than 2 GB");
+            }
+            return new EmbeddingStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(String path, Map<String, float[]> vectors, int dimension) throws IOException {
+        write(path, vectors, dimension, null, EmbeddingPrecision.FLOAT32);
+    }
+
+    /**
+     * Write the vectors of a vocabulary, in the order of the tokens.
+     *
+     * @param vectors   the vector of each token, of {@code dimension} values
+     * @param dimension the dimension of the vectors
+     * @param subwords  the n-gram rows for the tokens that are not in the vocabulary, or null
+     * @param precision the precision the rows are encoded in
+     * @throws IOException if the file cannot be written, or would be larger than 2 GB
+     */
+    public static void write(String path, Map<String, float[]> vectors, int dimension, Subwords subwords,
+                             EmbeddingPrecision precision) throws IOException {
+        List<byte[]> tokens = new ArrayList<>();
+        List<float[]> rows = new ArrayList<>();
+        for (Map.Entry<String, float[]> entry : new TreeMap<>(vectors).entrySet()) {
+            if (entry.getValue().length != dimension) {
+                throw new IllegalArgumentException("The vector of " + entry.getKey() + " has " + entry.getValue().length + " values instead of " + dimension);
+            }
+            tokens.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            rows.add(entry.getValue());
+        }
+        int count = tokens.size();
+        // At most half full, so a lookup probes few slots
+        int tableSize = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+        long tokenBytes = 0;
+        for (byte[] token : tokens) {
+            tokenBytes += token.length;
+        }
+        TreeMap<Integer, float[]> ngrams = subwords == null ? new TreeMap<>() : new TreeMap<>(subwords.rows());
+        int rowBytes = precision.bytes(dimension);
+        long size = HEADER_SIZE + 4L * tableSize + 4L * (count + 1) + pad(tokenBytes) + pad((long) count * rowBytes)
+                + (4L + rowBytes) * ngrams.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The embedding store would be larger than 2 GB: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).putInt(tableSize);
+        buffer.putInt(subwords == null ? 0 : subwords.minn()).putInt(subwords == null ? 0 : subwords.maxn())
+                .putInt(subwords == null ? 0 : subwords.bucket()).putInt(ngrams.size()).putInt(precision.ordinal());
+        int[] table = new int[tableSize];
+        for (int row = 0; row < count; row++) {
+            int slot = hash(tokens.get(row)) & (tableSize - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = row + 1;
+        }
+        for (int slot : table) {
+            buffer.putInt(slot);
+        }
+        int offset = 0;
+        for (byte[] token : tokens) {
+            buffer.putInt(offset);
+            offset += token.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] token : tokens) {
+            buffer.put(token);
+        }
+        buffer.position(buffer.position() + (int) (pad(tokenBytes) - tokenBytes));
+        for (float[] row : rows) {
+            precision.encode(row, buffer, buffer.position());
+            buffer.position(buffer.position() + rowBytes);
+        }
+        buffer.position(buffer.position() + (int) (pad((long) count * rowBytes) - (long) count * rowBytes));
+        for (int ngram : ngrams.keySet()) {
+            buffer.putInt(ngram);
+        }
+        for (float[] row : ngrams.values()) {
+            if (row.length != dimension) {
+                throw new IllegalArgumentException("An n-gram row has " + row.length + " values instead of " + dimension);
+            }
+            precision.encode(row, buffer, buffer.position());
+            buffer.position(buffer.position() + rowBytes);
+        }
+
+        File parentDir = new File(path).getAbsoluteFile().getParentFile();
+        if (!parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create the directory of " + path);
+        }
+        buffer.flip();
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw"); FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] vector(String token) {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        int row = find(bytes);
+        float[] values = new float[dimension];
+        if (row >= 0) {
+            precision.decode(buffer, vectorsStart + row * rowBytes, values);
+            return values;
+        }
+        // The n-grams of the token that are in the store, averaged in the order and precision of FastTextModel
+        float[] ngramValues = new float[dimension];
+        int found = 0;
+        for (int ngram : FastTextModel.subwordBuckets(token, minn, maxn, bucket)) {
+            int index = findNgram(ngram);
+            if (index >= 0) {
+                precision.decode(buffer, ngramVectorsStart + index * rowBytes, ngramValues);
+                for (int i = 0; i < dimension; i++) {
+                    values[i] += ngramValues[i];
+                }
+                found++;
+            }
+        }
+        if (found == 0) {
+            unknownTokens.increment();
+            return new float[0];
+        }
+        approximatedTokens.increment();
+        float scale = (float) (1.0 / found);
+        for (int i = 0; i < dimension; i++) {
+            values[i] *= scale;
+        }
+        return values;
+    }
+
+    public boolean contains(String token) {
+        return find(token.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    // The number of tokens of the vocabulary
+    public int size() {
+        return count;
+    }
+
+    // The number of lookups of tokens that are not in the vocabulary, whose models were not in the exported corpus,
+    // and that have none of their n-grams in the store either
+    public long getUnknownTokens() {
+        return unknownTokens.sum();
+    }
+
+    // The number of lookups of tokens that are not in the vocabulary, approximated from their n-grams
+    public long getApproximatedTokens() {
+        return approximatedTokens.sum();
+    }
+
+    public EmbeddingPrecision getPrecision() {
+        return precision;
+    }
+
+    // SHA-256 of the whole file, in hex, which tells stores of other vocabularies, vectors or precisions apart
+    public String contentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer.duplicate().clear());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int ngramCount() {
+        return ngramCount;
+    }
+
+    private int find(byte[] token) {
+        int slot = hash(token) & (tableSize - 1);
+        while (true) {
+            int row = buffer.getInt(HEADER_SIZE + 4 * slot) - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (matches(row, token)) {
+                return row;
+            }
+            slot = (slot + 1) & (tableSize - 1);
+        }
+    }
+
+    // Binary search of the sorted n-gram buckets
+    private int findNgram(int ngram) {
+        int low = 0;
+        int high = ngramCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.getInt(ngramBucketsStart + 4 * middle);
+            if (value < ngram) {
+                low = middle + 1;
+            } else if (value > ngram) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int row, byte[] token) {
+        int start = buffer.getInt(offsetsStart + 4 * row);
+        int end = buffer.getInt(offsetsStart + 4 * (row + 1));
+        if (end - start != token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (buffer.get(bytesStart + start + i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 32-bit FNV-1a
+    private static int hash(byte[] bytes) {
+        int hash = 0x811C9DC5;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static long pad(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    private static int pad(int length) {
+        return (length + 3) & ~3;
+    }
+}
@@ -0,0 +1,454 @@
+package org.models.xmi.json.similarityMeasure;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reader of the word vectors of a fastText .bin model (format version 12, not quantized), in plain Java.
+ * <p>
+ * The dictionary is read into arrays and the input matrix is memory-mapped, so the vectors stay off-heap and are
+ * paged in on use. The vector of a word is computed as fastText does: the average of the row of the word, when it is
+ * in the dictionary, and of the rows of its character n-grams, hashed into the buckets with FNV-1a. The UTF-8 bytes
+ * of the word are hashed straight from the string, so a lookup allocates nothing. The model is immutable after
+ * loading and lookups only read it, so they need no lock.
+ */
+public final class FastTextModel implements WordVectors {
+
+    private static final int MAGIC = 793712314;
+    private static final int VERSION = 12;
+    private static final String EOS = "</s>";
+    private static final int BOW = '<';
+    private static final int EOW = '>';
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final int dimension;
+    private final int minn;
+    private final int maxn;
+    private final int bucket;
+    private final int nwords;
+    // The words one after the other, the start of each, and an open addressing table of word index + 1
+    private final byte[] words;
+    private final int[] wordStarts;
+    private final int[] wordTable;
+    // -1 when the buckets were not pruned, otherwise the row of each bucket that was kept
+    private final long pruneIndexSize;
+    private final IntIntMap pruneIndex;
+    // The input matrix, in segments of rowsPerSegment rows of less than 2 GB each
+    private final ByteBuffer[] segments;
+    private final int rowsPerSegment;
+    private final long rows;
+
+    private FastTextModel(int dimension, int minn, int maxn, int bucket, int nwords, byte[] words, int[] wordStarts,
+                          long pruneIndexSize, IntIntMap pruneIndex, ByteBuffer[] segments, int rowsPerSegment, long rows) {
+        this.dimension = dimension;
+        this.minn = minn;
+        this.maxn = maxn;
+        this.bucket = bucket;
+        this.nwords = nwords;
+        this.words = words;
+        this.wordStarts = wordStarts;
+        this.pruneIndexSize = pruneIndexSize;
+        this.pruneIndex = pruneIndex;
+        this.segments = segments;
+        this.rowsPerSegment = rowsPerSegment;
+        this.rows = rows;
+        int size = wordStarts.length - 1;
+        this.wordTable = new int[Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1];
+        for (int w = 0; w < size; w++) {
+            int slot = wordHash(words, wordStarts[w], wordStarts[w + 1]) & (wordTable.length - 1);
+            while (wordTable[slot] != 0) {
+                slot = (slot + 1) & (wordTable.length - 1);
+            }
+            wordTable[slot] = w + 1;
+        }
+    }
+
+    public static FastTextModel open(String path) throws IOException {
+        int dimension;
+        int minn;
+        int maxn;
+        int bucket;
+        int nwords;
+        ByteArrayOutputStream words = new ByteArrayOutputStream();
+        int[] wordStarts;
+        long pruneIndexSize;
+        IntIntMap pruneIndex;
+        long matrixOffset;
+        long rows;
+        long columns;
+        try (LittleEndianInput in = new LittleEndianInput(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a fastText model: " + path);
+            }
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("fastText model version " + version + " is not supported: " + path);
+            }
+            // Args: dim, ws, epoch, minCount, neg, wordNgrams, loss, model, bucket, minn, maxn, lrUpdateRate, t
+            dimension = in.readInt();
+            in.skip(7 * 4);
+            bucket = in.readInt();
+            minn = in.readInt();
+            maxn = in.readInt();
+            in.skip(4 + 8);
+
+            int size = in.readInt();
+            nwords = in.readInt();
+            in.skip(4 + 8);
+            pruneIndexSize = in.readLong();
+            wordStarts = new int[size + 1];
+            for (int w = 0; w < size; w++) {
+                wordStarts[w] = words.size();
+                int b;
+                while ((b = in.read()) != 0) {
+                    words.write(b);
+                }
+                // count, entry type
+                in.skip(8 + 1);
+            }
+            wordStarts[size] = words.size();
+            pruneIndex = new IntIntMap((int) Math.max(0, pruneIndexSize));
+            for (long p = 0; p < pruneIndexSize; p++) {
+                int first = in.readInt();
+                pruneIndex.put(first, in.readInt());
+            }
+
+            if (in.read() != 0) {
+                throw new IOException("Quantized fastText models are not supported: " + path);
+            }
+            rows = in.readLong();
+            columns = in.readLong();
+            matrixOffset = in.position();
+        }
+        if (columns != dimension) {
+            throw new IOException("The input matrix of " + path + " has " + columns + " columns instead of " + dimension);
+        }
+
+        int rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / (4L * dimension));
+        ByteBuffer[] segments = new ByteBuffer[(int) ((rows + rowsPerSegment - 1) / rowsPerSegment)];
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() < matrixOffset + 4 * rows * dimension) {
+                throw new EOFException("The input matrix of " + path + " is truncated");
+            }
+            for (int s = 0; s < segments.length; s++) {
+                long segmentRows = Math.min(rowsPerSegment, rows - (long) s * rowsPerSegment);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, matrixOffset + 4L * s * rowsPerSegment * dimension,
+                        4 * segmentRows * dimension).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        return new FastTextModel(dimension, minn, maxn, bucket, nwords, words.toByteArray(), wordStarts,
+                pruneIndexSize, pruneIndexSize > 0 ? pruneIndex : null, segments, rowsPerSegment, rows);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    public int getMinn() {
+        return minn;
+    }
+
+    public int getMaxn() {
+        return maxn;
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    // Like fastText, a word without any row gets a zero vector
+    @Override
+    public float[] vector(String token) {
+        float[] vector = new float[dimension];
+        wordVector(token, vector);
+        return vector;
+    }
+
+    @Override
+    public boolean vector(String token, float[] out) {
+        wordVector(token, out);
+        return true;
+    }
+
+    /**
+     * Compute the vector of a word into {@code out}, which must hold {@link #dimension()} values, with the same float
+     * operations in the same order as fastText.
+     *
+     * @return the number of rows averaged, 0 when the vector is zero
+     */
+    public int wordVector(String word, float[] out) {
+        Arrays.fill(out, 0, dimension, 0.0f);
+        int count = 0;
+        int id = findWord(word);
+        if (id >= 0) {
+            addRow(id, out);
+            count++;
+        }
+        if (!word.equals(EOS) && bucket > 0 && maxn > 0) {
+            // The n-grams of subwordBuckets, each row added as soon as its bucket is hashed
+            int end = word.length() + 1;
+            for (int i = -1; i < end; i = next(word, i)) {
+                int hash = FNV_OFFSET_BASIS;
+                int j = i;
+                for (int n = 1; j < end && n <= maxn; n++) {
+                    hash = hash(hash, codePointAt(word, j));
+                    j = next(word, j);
+                    if (n >= minn && !(n == 1 && (i < 0 || j == end))) {
+                        int row = bucketRow(Integer.remainderUnsigned(hash, bucket));
+                        if (row >= 0) {
+                            addRow(row, out);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        if (count > 0) {
+            float scale = (float) (1.0 / count);
+            for (int i = 0; i < dimension; i++) {
+                out[i] *= scale;
+            }
+        }
+        return count;
+    }
+
+    // The input matrix row of a bucket of subwordBuckets, -1 when it was pruned
+    public int bucketRow(int bucket) {
+        if (pruneIndexSize == 0) {
+            return -1;
+        }
+        if (pruneIndex != null) {
+            int row = pruneIndex.get(bucket);
+            return row < 0 ? -1 : nwords + row;
+        }
+        return nwords + bucket;
+    }
+
+    // Copies a row of the input matrix into out
+    public void row(int row, float[] out) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        }
+        ByteBuffer segment = segments[row / rowsPerSegment];
+        int position = (row % rowsPerSegment) * dimension * 4;
+        for (int i = 0; i < dimension; i++) {
+            out[i] = segment.getFloat(position + 4 * i);
+        }
+    }
+
+    private void addRow(int row, float[] out) {
+        ByteBuffer segment = segments[row / rowsPerSegment];
+        int position = (row % rowsPerSegment) * dimension * 4;
+        for (int i = 0; i < dimension; i++) {
+            out[i] += segment.getFloat(position + 4 * i);
+        }
+    }
+
+    private int findWord(String word) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < word.length(); i = next(word, i)) {
+            hash = hash(hash, codePointAt(word, i));
+        }
+        int slot = hash & (wordTable.length - 1);
+        while (wordTable[slot] != 0) {
+            int w = wordTable[slot] - 1;
+            if (isWord(w, word)) {
+                return w;
+            }
+            slot = (slot + 1) & (wordTable.length - 1);
+        }
+        return -1;
+    }
+
+    // Whether the UTF-8 bytes of the word are those of word w of the dictionary
+    private boolean isWord(int w, String word) {
+        int p = wordStarts[w];
+        for (int i = 0; i < word.length(); i = next(word, i)) {
+            int codePoint = codePointAt(word, i);
+            for (int k = 0; k < utf8Length(codePoint); k++) {
+                if (p == wordStarts[w + 1] || words[p++] != utf8Byte(codePoint, k)) {
+                    return false;
+                }
+            }
+        }
+        return p == wordStarts[w + 1];
+    }
+
+    private static int wordHash(byte[] bytes, int start, int end) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ bytes[i]) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * The buckets of the character n-grams of a word, in the order of fastText: the n-grams of {@code minn} to
+     * {@code maxn} characters of the word between "<" and ">", by start then length, except "<" and ">" alone.
+     * A bucket is the FNV-1a hash of the UTF-8 bytes of the n-gram, each byte sign-extended as fastText does, modulo
+     * {@code bucket}. {@link #wordVector} enumerates the same buckets without building the array.
+     */
+    public static int[] subwordBuckets(String word, int minn, int maxn, int bucket) {
+        if (bucket <= 0 || maxn <= 0) {
+            return new int[0];
+        }
+        int end = word.length() + 1;
+        int[] buckets = new int[(end + 1) * maxn];
+        int count = 0;
+        for (int i = -1; i < end; i = next(word, i)) {
+            int hash = FNV_OFFSET_BASIS;
+            int j = i;
+            for (int n = 1; j < end && n <= maxn; n++) {
+                hash = hash(hash, codePointAt(word, j));
+                j = next(word, j);
+                if (n >= minn && !(n == 1 && (i < 0 || j == end))) {
+                    buckets[count++] = Integer.remainderUnsigned(hash, bucket);
+                }
+            }
+        }
+        return Arrays.copyOf(buckets, count);
+    }
+
+    // The characters of "<" + word + ">" are at -1 for "<", at their index in the word, and at word.length() for ">";
+    // the position of the character after the one at i
+    private static int next(String word, int i) {
+        if (i >= 0 && i + 1 < word.length() && Character.isHighSurrogate(word.charAt(i)) && Character.isLowSurrogate(word.charAt(i + 1))) {
+            return i + 2;
+        }
+        return i + 1;
+    }
+
+    // The code point at position i of "<" + word + ">", "?" for an unpaired surrogate as in String.getBytes
+    private static int codePointAt(String word, int i) {
+        if (i < 0) {
+            return BOW;
+        }
+        if (i == word.length()) {
+            return EOW;
+        }
+        int codePoint = word.codePointAt(i);
+        return codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE ? '?' : codePoint;
+    }
+
+    // FNV-1a of the UTF-8 bytes of the code point, continuing from hash
+    private static int hash(int hash, int codePoint) {
+        for (int k = 0; k < utf8Length(codePoint); k++) {
+            hash = (hash ^ utf8Byte(codePoint, k)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int utf8Length(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+
+    // Byte k of the UTF-8 encoding of the code point
+    private static byte utf8Byte(int codePoint, int k) {
+        int length = utf8Length(codePoint);
+        if (length == 1) {
+            return (byte) codePoint;
+        }
+        int shift = 6 * (length - 1 - k);
+        return (byte) (k == 0 ? (0xF0 << (4 - length)) | (codePoint >>> shift) : 0x80 | ((codePoint >>> shift) & 0x3F));
+    }
+
+    // Open addressing map from the buckets that were kept to their rows, so a lookup does not box
+    private static final class IntIntMap {
+        private final int[] keys;
+        // The value + 1 of each slot, 0 for a free slot
+        private final int[] values;
+        private final int shift;
+
+        IntIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        void put(int key, int value) {
+            int slot = slot(key);
+            while (values[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = key;
+            values[slot] = value + 1;
+        }
+
+        // The value of the key, -1 when there is none
+        int get(int key) {
+            for (int slot = slot(key); values[slot] != 0; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private int slot(int key) {
+            return (key * 0x9E3779B9) >>> shift;
+        }
+    }
+
+    // The little endian values of the model file, which fastText writes in the byte order of x86
+    private static final class LittleEndianInput implements AutoCloseable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[8];
+        private long position;
+
+        LittleEndianInput(InputStream in) {
+            this.in = in;
+        }
+
+        int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            position++;
+            return b;
+        }
+
+        int readInt() throws IOException {
+            readFully(4);
+            return ByteBuffer.wrap(buffer, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        }
+
+        long readLong() throws IOException {
+            readFully(8);
+            return ByteBuffer.wrap(buffer, 0, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        }
+
+        void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                read();
+            }
+        }
+
+        long position() {
+            return position;
+        }
+
+        private void readFully(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                buffer[i] = (byte) read();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
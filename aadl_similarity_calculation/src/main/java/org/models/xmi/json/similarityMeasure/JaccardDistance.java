@@ -1,64 +1,51 @@
 package org.models.xmi.json.similarityMeasure;
 
-import org.jgrapht.Graph;
-import org.models.xmi.json.visualize.JGraphXVisualization;
-import org.models.xmi.json.graphModel.Connection;
-import org.models.xmi.json.graphModel.MakeCompleteGraph;
-import org.models.xmi.json.graphModel.Model;
-import org.models.xmi.json.graphModel.Node;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.models.xmi.json.ModelCorpus;
+import org.models.xmi.json.graphModel.CompactModelGraph;
 
 import javax.json.JsonObject;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
+/**
+ * Jaccard distance of two models over the multisets of their node categories and of their edge signatures, see
+ * {@link CategoryProfile#jaccardDistance}. It only compares the count vectors of the profiles, which the corpus
+ * builds when the models are loaded, so it scores all the pairs of a corpus in a fraction of the time of the
+ * structural measures. As the "jaccard" measure its similarity is 1 minus the distance.
+ */
+public class JaccardDistance implements SimilarityMeasure<CategoryProfile> {
+    private final static Logger logger = LogManager.getLogger(JaccardDistance.class);
 
-public class JaccardDistance {
-    private static final Logger logger = Logger.getLogger(Similarity.class.getName());
+    public static final String NAME = "jaccard";
 
     public static double calculate(JsonObject json1, JsonObject json2) {
         try {
-            Model model1 = MakeCompleteGraph.buildGraphStructure(json1.toString(), "model1");
-            Model model2 = MakeCompleteGraph.buildGraphStructure(json2.toString(), "model2");
+            CategoryProfile profile1 = CategoryProfile.of(CompactModelGraph.fromJson(json1));
+            CategoryProfile profile2 = CategoryProfile.of(CompactModelGraph.fromJson(json2));
+            double distance = profile1.jaccardDistance(profile2);
 
-            Graph<Node, Connection> g1 = model1.getGraph();
-            Graph<Node, Connection> g2 = model2.getGraph();
+            logger.info("Graph distance based on Jaccard distance: " + distance);
 
-            JGraphXVisualization.VisualizeGraph(g1, "Graph 1");
-            JGraphXVisualization.VisualizeGraph(g2, "Graph 2");
-
-            logger.info("Comparing graphs: " + model1.getName() + " and " + model2.getName());
-
-            double vertexJaccardDistance = calculateJaccardDistance(g1.vertexSet(), g2.vertexSet());
-            double edgeJaccardDistance = calculateJaccardDistance(g1.edgeSet(), g2.edgeSet());
-
-            double similarity = (vertexJaccardDistance + edgeJaccardDistance) / 2;
-
-            logger.info("Graph similarity based on Jaccard distance: " + similarity);
-
-            return similarity;
+            return distance;
 
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error calculating similarity", e);
+            logger.error("Error calculating the Jaccard distance", e);
             return 0.0;
         }
     }
 
-    private static <T> double calculateJaccardDistance(Set<T> set1, Set<T> set2) {
-        Set<T> intersection = new HashSet<>(set1);
-        intersection.retainAll(set2);
-
-        Set<T> union = new HashSet<>(set1);
-        union.addAll(set2);
+    @Override
+    public String getName() {
+        return NAME;
+    }
 
-        if (union.isEmpty()) {
-            return 0.0;
-        }
+    @Override
+    public CategoryProfile prepare(ModelCorpus.Entry entry) {
+        return entry.getProfile();
+    }
 
-        double jaccardIndex = (double) intersection.size() / union.size();
-        return 1.0 - jaccardIndex;
+    @Override
+    public double score(CategoryProfile model1, CategoryProfile model2) {
+        return 1.0 - model1.jaccardDistance(model2);
     }
 }
-
-
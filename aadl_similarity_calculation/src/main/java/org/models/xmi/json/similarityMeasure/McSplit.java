@@ -0,0 +1,397 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jgrapht.Graph;
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.graphModel.Connection;
+import org.models.xmi.json.graphModel.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Exact maximum common connected induced subgraph of two model graphs, by McSplit branch and bound.
+ * <p>
+ * Two nodes can only be matched when they have the same {@link Node.Category} (and the same self loop, if any),
+ * and two matched pairs must be joined by edges of the same {@link Connection.ConnectionType} in both directions,
+ * or by no edge. The unmatched nodes are kept in label classes, a pair of bitsets of the nodes of g1 and g2 that
+ * could still be matched together; matching a pair splits every class by the adjacency to the pair, and the sum
+ * over the classes of the smaller side bounds the nodes that can still be added. Only nodes adjacent to the
+ * mapping are branched on, so the subgraph is connected and none of its nodes is dropped as isolated. The branches
+ * of the first node are searched in parallel on the current fork/join pool, sharing the best mapping found.
+ * <p>
+ * With a time budget the search stops when it runs out and the best mapping found so far is returned, a lower
+ * bound of the exact result.
+ */
+public final class McSplit {
+    private final static Logger logger = LogManager.getLogger(McSplit.class);
+
+    // Adjacency codes: 0 for no edge, else (type of u -> w + 1) * TYPES + (type of w -> u + 1), a missing direction counting 0
+    private final static int TYPES = Connection.ConnectionType.values().length + 1;
+
+    private final IndexedGraph left;
+    private final IndexedGraph right;
+    private final long deadline;
+    private final AtomicBoolean timedOut = new AtomicBoolean();
+    private volatile int bestSize;
+    private int[] bestLeft = new int[0];
+    private int[] bestRight = new int[0];
+
+    private McSplit(IndexedGraph left, IndexedGraph right, long timeBudgetMillis) {
+        this.left = left;
+        this.right = right;
+        this.deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Maximum common connected induced subgraph of g1 and g2, with the nodes and edges of g1, isolated nodes removed as in
+     * {@link Similarity#findMaximumCommonSubgraph}.
+     *
+     * @param timeBudgetMillis the time after which the best subgraph found so far is returned, 0 for no limit
+     */
+    public static Graph<Node, Connection> findMaximumCommonSubgraph(Graph<Node, Connection> g1, Graph<Node, Connection> g2, long timeBudgetMillis) {
+        boolean[] commonEdges = findCommonEdges(CompactModelGraph.of("model1", g1), CompactModelGraph.of("model2", g2), timeBudgetMillis);
+        return Similarity.buildCommonSubgraph(g1, commonEdges);
+    }
+
+    // The edges of g1 in the maximum common connected induced subgraph, by edge index
+    static boolean[] findCommonEdges(CompactModelGraph g1, CompactModelGraph g2, long timeBudgetMillis) {
+        McSplit search = new McSplit(new IndexedGraph(g1), new IndexedGraph(g2), timeBudgetMillis);
+        search.run();
+        if (search.timedOut.get()) {
+            logger.info("MCS time budget of " + timeBudgetMillis + " ms exhausted, keeping the best mapping found: " + search.bestSize + " nodes");
+        }
+
+        boolean[] commonVertices = new boolean[g1.vertexCount()];
+        for (int v : search.bestLeft) {
+            commonVertices[search.left.nodes[v]] = true;
+        }
+        boolean[] commonEdges = new boolean[g1.edgeCount()];
+        for (int e = 0; e < commonEdges.length; e++) {
+            commonEdges[e] = commonVertices[g1.getEdgeSource(e)] && commonVertices[g1.getEdgeTarget(e)];
+        }
+        return commonEdges;
+    }
+
+    private void run() {
+        List<LabelClass> classes = new ArrayList<>();
+        for (int label = 0; label < left.labelCount(); label++) {
+            long[] leftBits = left.withLabel(label);
+            long[] rightBits = right.withLabel(label);
+            LabelClass labelClass = new LabelClass(leftBits, rightBits, false);
+            if (labelClass.leftCount > 0 && labelClass.rightCount > 0) {
+                classes.add(labelClass);
+            }
+        }
+        if (classes.isEmpty()) {
+            return;
+        }
+        new Root(classes).invoke();
+    }
+
+    private synchronized void improve(int size, int[] mapLeft, int[] mapRight) {
+        if (size > bestSize) {
+            bestSize = size;
+            bestLeft = Arrays.copyOf(mapLeft, size);
+            bestRight = Arrays.copyOf(mapRight, size);
+        }
+    }
+
+    private int best() {
+        return bestSize;
+    }
+
+    private boolean outOfTime() {
+        if (timedOut.get()) {
+            return true;
+        }
+        if (System.nanoTime() > deadline) {
+            timedOut.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    private static int bound(int size, List<LabelClass> classes) {
+        int bound = size;
+        for (LabelClass labelClass : classes) {
+            bound += Math.min(labelClass.leftCount, labelClass.rightCount);
+        }
+        return bound;
+    }
+
+    // The class adjacent to the mapping with the smallest larger side is branched on first, -1 if there is none
+    private static int selectClass(List<LabelClass> classes, int size) {
+        int selected = -1;
+        for (int c = 0; c < classes.size(); c++) {
+            LabelClass labelClass = classes.get(c);
+            if ((size == 0 || labelClass.adjacent) && (selected < 0 || Math.max(labelClass.leftCount, labelClass.rightCount)
+                    < Math.max(classes.get(selected).leftCount, classes.get(selected).rightCount))) {
+                selected = c;
+            }
+        }
+        return selected;
+    }
+
+    // The classes left after matching v with w: every class split by its adjacency codes to v and to w
+    private List<LabelClass> split(List<LabelClass> classes, int v, int w) {
+        List<LabelClass> result = new ArrayList<>();
+        for (LabelClass labelClass : classes) {
+            long[] leftRest = clear(andNot(labelClass.left, left.neighbours[v]), v);
+            long[] rightRest = clear(andNot(labelClass.right, right.neighbours[w]), w);
+            LabelClass unconnected = new LabelClass(leftRest, rightRest, labelClass.adjacent);
+            if (unconnected.leftCount > 0 && unconnected.rightCount > 0) {
+                result.add(unconnected);
+            }
+            for (int k = 0; k < left.codes[v].length; k++) {
+                int r = right.indexOfCode(w, left.codes[v][k]);
+                if (r < 0) {
+                    continue;
+                }
+                LabelClass connected = new LabelClass(and(labelClass.left, left.codeBits[v][k]), and(labelClass.right, right.codeBits[w][r]), true);
+                if (connected.leftCount > 0 && connected.rightCount > 0) {
+                    result.add(connected);
+                }
+            }
+        }
+        return result;
+    }
+
+    // The classes with v left unmatched
+    private static List<LabelClass> without(List<LabelClass> classes, int selected, int v) {
+        List<LabelClass> result = new ArrayList<>(classes);
+        LabelClass labelClass = classes.get(selected);
+        LabelClass rest = new LabelClass(clear(labelClass.left, v), labelClass.right, labelClass.adjacent);
+        if (rest.leftCount > 0) {
+            result.set(selected, rest);
+        } else {
+            result.remove(selected);
+        }
+        return result;
+    }
+
+    private void search(List<LabelClass> classes, int[] mapLeft, int[] mapRight, int size) {
+        while (true) {
+            if (size > best()) {
+                improve(size, mapLeft, mapRight);
+            }
+            if (classes.isEmpty() || bound(size, classes) <= best() || outOfTime()) {
+                return;
+            }
+            int selected = selectClass(classes, size);
+            if (selected < 0) {
+                return;
+            }
+            LabelClass labelClass = classes.get(selected);
+            int v = nextSetBit(labelClass.left, 0);
+            for (int w = nextSetBit(labelClass.right, 0); w >= 0; w = nextSetBit(labelClass.right, w + 1)) {
+                mapLeft[size] = v;
+                mapRight[size] = w;
+                search(split(classes, v, w), mapLeft, mapRight, size + 1);
+            }
+            // Then every mapping that leaves v unmatched, in this frame so the depth stays the size of the mapping
+            classes = without(classes, selected, v);
+        }
+    }
+
+    // The first level of the search tree: one task per node w that the first node v can be matched with, and one without v
+    private final class Root extends RecursiveAction {
+        private final List<LabelClass> classes;
+
+        Root(List<LabelClass> classes) {
+            this.classes = classes;
+        }
+
+        @Override
+        protected void compute() {
+            int selected = selectClass(classes, 0);
+            LabelClass labelClass = classes.get(selected);
+            int v = nextSetBit(labelClass.left, 0);
+            List<RecursiveAction> branches = new ArrayList<>();
+            for (int w = nextSetBit(labelClass.right, 0); w >= 0; w = nextSetBit(labelClass.right, w + 1)) {
+                int matched = w;
+                branches.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        int[] mapLeft = new int[Math.min(left.nodes.length, right.nodes.length)];
+                        int[] mapRight = new int[mapLeft.length];
+                        mapLeft[0] = v;
+                        mapRight[0] = matched;
+                        search(split(classes, v, matched), mapLeft, mapRight, 1);
+                    }
+                });
+            }
+            List<LabelClass> rest = without(classes, selected, v);
+            branches.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    int[] mapLeft = new int[Math.min(left.nodes.length, right.nodes.length)];
+                    search(rest, mapLeft, new int[mapLeft.length], 0);
+                }
+            });
+            invokeAll(branches);
+        }
+    }
+
+    // Nodes of g1 and g2 that can still be matched together, and whether they are adjacent to the mapping
+    private static final class LabelClass {
+        private final long[] left;
+        private final long[] right;
+        private final boolean adjacent;
+        private final int leftCount;
+        private final int rightCount;
+
+        LabelClass(long[] left, long[] right, boolean adjacent) {
+            this.left = left;
+            this.right = right;
+            this.adjacent = adjacent;
+            this.leftCount = cardinality(left);
+            this.rightCount = cardinality(right);
+        }
+    }
+
+    /**
+     * A graph with its nodes numbered by decreasing degree, so the first node of a bitset is the most constrained,
+     * and for every node the bitsets of its neighbours per adjacency code.
+     */
+    private static final class IndexedGraph {
+        // The node of the graph at each index
+        private final int[] nodes;
+        private final int[] labels;
+        private final int words;
+        private final long[][] neighbours;
+        private final int[][] codes;
+        private final long[][][] codeBits;
+
+        IndexedGraph(CompactModelGraph graph) {
+            int vertexCount = graph.vertexCount();
+            // Stable, so nodes of the same degree keep the order of the graph
+            nodes = IntStream.range(0, vertexCount).boxed()
+                    .sorted(Comparator.comparingInt((Integer node) -> -graph.degree(node)))
+                    .mapToInt(Integer::intValue).toArray();
+            int[] indices = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                indices[nodes[v]] = v;
+            }
+            words = Math.max(1, (vertexCount + 63) >>> 6);
+
+            // Out and in edge types between each node and each of its neighbours
+            int[][] adjacencyTargets = new int[vertexCount][];
+            int[][] adjacencyCodes = new int[vertexCount][];
+            labels = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                Map<Integer, Integer> adjacency = new TreeMap<>();
+                int selfLoop = 0;
+                for (int k = graph.outStart(nodes[v]); k < graph.outEnd(nodes[v]); k++) {
+                    int edge = graph.outEdge(k);
+                    int w = indices[graph.getEdgeTarget(edge)];
+                    if (w == v) {
+                        selfLoop = graph.getEdgeTypeCode(edge) + 1;
+                    } else {
+                        adjacency.merge(w, (graph.getEdgeTypeCode(edge) + 1) * TYPES, Integer::sum);
+                    }
+                }
+                for (int k = graph.inStart(nodes[v]); k < graph.inEnd(nodes[v]); k++) {
+                    int edge = graph.inEdge(k);
+                    int u = indices[graph.getEdgeSource(edge)];
+                    if (u != v) {
+                        adjacency.merge(u, graph.getEdgeTypeCode(edge) + 1, Integer::sum);
+                    }
+                }
+                labels[v] = graph.getCategoryCode(nodes[v]) * TYPES + selfLoop;
+                adjacencyTargets[v] = adjacency.keySet().stream().mapToInt(Integer::intValue).toArray();
+                adjacencyCodes[v] = adjacency.values().stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            neighbours = new long[vertexCount][];
+            codes = new int[vertexCount][];
+            codeBits = new long[vertexCount][][];
+            for (int v = 0; v < vertexCount; v++) {
+                neighbours[v] = new long[words];
+                int[] distinct = Arrays.stream(adjacencyCodes[v]).distinct().sorted().toArray();
+                codes[v] = distinct;
+                codeBits[v] = new long[distinct.length][words];
+                for (int a = 0; a < adjacencyTargets[v].length; a++) {
+                    int w = adjacencyTargets[v][a];
+                    neighbours[v][w >>> 6] |= 1L << w;
+                    int k = Arrays.binarySearch(distinct, adjacencyCodes[v][a]);
+                    codeBits[v][k][w >>> 6] |= 1L << w;
+                }
+            }
+        }
+
+        int labelCount() {
+            return Node.Category.values().length * TYPES;
+        }
+
+        long[] withLabel(int label) {
+            long[] bits = new long[words];
+            for (int v = 0; v < nodes.length; v++) {
+                if (labels[v] == label) {
+                    bits[v >>> 6] |= 1L << v;
+                }
+            }
+            return bits;
+        }
+
+        int indexOfCode(int v, int code) {
+            return Arrays.binarySearch(codes[v], code);
+        }
+    }
+
+    private static long[] and(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] & b[i];
+        }
+        return result;
+    }
+
+    private static long[] andNot(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] & ~b[i];
+        }
+        return result;
+    }
+
+    // A copy of a without the given bit
+    private static long[] clear(long[] a, int bit) {
+        long[] result = a.clone();
+        result[bit >>> 6] &= ~(1L << bit);
+        return result;
+    }
+
+    private static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static int nextSetBit(long[] bits, int from) {
+        int i = from >>> 6;
+        if (i >= bits.length) {
+            return -1;
+        }
+        long word = bits[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == bits.length) {
+                return -1;
+            }
+            word = bits[i];
+        }
+    }
+}
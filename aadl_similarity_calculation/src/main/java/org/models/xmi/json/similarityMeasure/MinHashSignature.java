@@ -0,0 +1,90 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.models.xmi.json.graphModel.CompactModelGraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MinHash signature of the structural shingles of a model graph.
+ * <p>
+ * The shingles are the category paths of {@code pathLength} nodes up the containment tree, from a node to its
+ * ancestors, and the (category, edge type, category) triple of every edge. They are counted as a multiset, the
+ * c-th occurrence of a shingle being a distinct element, so the probability that two signatures agree at a position
+ * is the weighted Jaccard similarity of the two shingle multisets.
+ */
+public final class MinHashSignature {
+
+    private final long[] values;
+
+    private MinHashSignature(long[] values) {
+        this.values = values;
+    }
+
+    public static MinHashSignature of(CompactModelGraph graph, int pathLength, int size) {
+        Map<Long, Integer> occurrences = new HashMap<>();
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            // Paths shorter than pathLength near the root are kept, they hash differently from the longer ones
+            long path = mix(graph.getCategoryCode(v) + 1);
+            int node = graph.getParent(v);
+            for (int length = 1; length < pathLength && node >= 0; length++) {
+                path = mix(path * 0x100000001B3L + graph.getCategoryCode(node) + 1);
+                node = graph.getParent(node);
+            }
+            occurrences.merge(path, 1, Integer::sum);
+        }
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            long triple = ((long) graph.getCategoryCode(graph.getEdgeSource(e)) << 16)
+                    | ((long) graph.getEdgeTypeCode(e) << 8) | graph.getCategoryCode(graph.getEdgeTarget(e));
+            occurrences.merge(mix(triple) ^ 0x5DEECE66DL, 1, Integer::sum);
+        }
+
+        long[] values = new long[size];
+        Arrays.fill(values, Long.MAX_VALUE);
+        for (Map.Entry<Long, Integer> shingle : occurrences.entrySet()) {
+            for (int c = 0; c < shingle.getValue(); c++) {
+                long element = mix(shingle.getKey() + c * 0x9E3779B97F4A7C15L);
+                for (int i = 0; i < size; i++) {
+                    // One hash function per position, seeded by the position
+                    long hash = mix(element ^ (i + 1) * 0xD1B54A32D192ED03L);
+                    if (hash < values[i]) {
+                        values[i] = hash;
+                    }
+                }
+            }
+        }
+        return new MinHashSignature(values);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Hash of the values from position start, exclusive end, the bucket of a band
+    public long band(int start, int end) {
+        long hash = start;
+        for (int i = start; i < end; i++) {
+            hash = mix(hash * 0x100000001B3L + values[i]);
+        }
+        return hash;
+    }
+
+    // Fraction of equal positions, an estimate of the weighted Jaccard similarity of the shingles
+    public double similarity(MinHashSignature other) {
+        int equal = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == other.values[i]) {
+                equal++;
+            }
+        }
+        return values.length == 0 ? 0.0 : (double) equal / values.length;
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,164 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.config.SimilarityConfig;
+import org.utils.IdentifierNormalizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The word vectors of the semantic similarity and the words the names of a model are split into, built once from
+ * the configuration and handed to the measures, so that nothing about them is shared by the whole process.
+ * <p>
+ * The vectors come from the embedding store of "embeddingStorePath" when it is set, otherwise from the fastText
+ * model, which is only loaded on the first lookup, and are cached in "embeddingPrecision". The names are split
+ * without the keywords of {@link SemanticSimilarityFastText} and the "common_words_to_exclude". The identity of a
+ * context names all of these, so that results computed with other vectors or words are not reused. A context is
+ * safe for concurrent use.
+ */
+public final class SemanticContext {
+    private final static Logger logger = LogManager.getLogger(SemanticContext.class);
+
+    // 2^16 tokens of 300 values, about 80 MB in float32 and 20 MB in int8; the names of the models use far fewer distinct tokens
+    private static final int CACHE_CAPACITY = 1 << 16;
+
+    private static volatile SemanticContext defaultContext;
+
+    private final EmbeddingPrecision precision;
+    private final IdentifierNormalizer normalizer;
+    // The fastText model loaded on first use when no source is given
+    private final String modelPath;
+    private final String identity;
+    private volatile WordVectors wordVectors;
+    private volatile EmbeddingCache vectors;
+
+    /**
+     * @param wordVectors the source of the vectors, e.g. an {@link EmbeddingStore}
+     * @param precision   the precision the vectors are cached in
+     * @param commonWords words left out of the names besides the keywords
+     */
+    public SemanticContext(WordVectors wordVectors, EmbeddingPrecision precision, Collection<String> commonWords) {
+        this(wordVectors, null, precision, commonWords);
+    }
+
+    private SemanticContext(WordVectors wordVectors, String modelPath, EmbeddingPrecision precision, Collection<String> commonWords) {
+        // The source of the vectors, then the words and the precision they are cached in
+        String source = wordVectors instanceof EmbeddingStore store
+                ? "store-" + store.contentHash() + "-" + store.getPrecision().name().toLowerCase(Locale.ROOT)
+                : wordVectors == null ? "fasttext-cc.en.300" : wordVectors.getClass().getSimpleName().toLowerCase(Locale.ROOT);
+        String words = "-words-" + precision.name().toLowerCase(Locale.ROOT);
+        if (!commonWords.isEmpty()) {
+            words += "-" + Integer.toHexString(new TreeSet<>(commonWords).hashCode());
+        }
+        this.identity = source + words;
+        Set<String> stopwords = new HashSet<>(SemanticSimilarityFastText.KEYWORDS);
+        stopwords.addAll(commonWords);
+        this.precision = precision;
+        this.normalizer = new IdentifierNormalizer(stopwords, SemanticSimilarityFastText.MINIMUM_TOKEN_LENGTH);
+        this.modelPath = modelPath;
+        this.wordVectors = wordVectors;
+        this.vectors = wordVectors == null ? null : new EmbeddingCache(CACHE_CAPACITY, precision, wordVectors);
+    }
+
+    // The context of a run: the embedding store of the configuration, or the fastText model when it has none
+    public static SemanticContext of(SimilarityConfig config) throws IOException {
+        EmbeddingPrecision precision = EmbeddingPrecision.of(config.getEmbeddingPrecision());
+        if (config.getEmbeddingStorePath() != null) {
+            EmbeddingStore store = EmbeddingStore.open(config.getEmbeddingStorePath());
+            if (store.getPrecision() != precision) {
+                logger.warn("The embedding store " + config.getEmbeddingStorePath() + " holds " + store.getPrecision() + " vectors but embeddingPrecision is "
+                        + precision + ": they are cached in " + precision + ", export the store again to use " + precision + " throughout");
+            }
+            return new SemanticContext(store, precision, config.getCommonWordsToExclude());
+        }
+        return new SemanticContext(null, SemanticSimilarityFastText.FAST_TEXT_MODEL_PATH, precision, config.getCommonWordsToExclude());
+    }
+
+    // The context of the default configuration, built on first use, for callers that are not handed one
+    public static SemanticContext getDefault() throws IOException {
+        SemanticContext context = defaultContext;
+        if (context == null) {
+            synchronized (SemanticContext.class) {
+                context = defaultContext;
+                if (context == null) {
+                    context = of(SimilarityConfig.getDefault());
+                    defaultContext = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    private EmbeddingCache vectors() {
+        EmbeddingCache cache = vectors;
+        if (cache == null) {
+            synchronized (this) {
+                cache = vectors;
+                if (cache == null) {
+                    try {
+                        wordVectors = FastTextModel.open(modelPath);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Error loading the fastText model " + modelPath, e);
+                    }
+                    cache = new EmbeddingCache(CACHE_CAPACITY, precision, wordVectors);
+                    vectors = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    public WordVectors getWordVectors() {
+        vectors();
+        return wordVectors;
+    }
+
+    // The cache of the token vectors, with its hit and miss counts
+    public EmbeddingCache getVectorCache() {
+        return vectors();
+    }
+
+    public EmbeddingPrecision getPrecision() {
+        return precision;
+    }
+
+    // The source of the vectors with its content hash and precision for a store, the precision of the cache and the
+    // common words, as in the keys of the pair store and the checkpoint
+    public String getIdentity() {
+        return identity;
+    }
+
+    // The vector of a token, an empty array when there is none; in FLOAT32 the cached array, not to be modified
+    public float[] vector(String token) {
+        return vectors().get(token);
+    }
+
+    // The tokens the vector of a model is averaged from, the words of its names without the keywords
+    public List<String> tokens(List<String> names) {
+        List<String> tokens = new ArrayList<>();
+        for (String name : names) {
+            normalizer.tokens(name, tokens);
+        }
+        return tokens;
+    }
+
+    // The model vector scaled to unit length, in single precision; empty when the model has no vector or a zero one
+    public float[] normalizedModelVector(List<String> names) {
+        return normalizedModelVector(names, vectors()::get);
+    }
+
+    // The same, with the token vectors of another source, empty arrays for the tokens it has no vector for
+    public float[] normalizedModelVector(List<String> names, Function<String, float[]> tokenVectors) {
+        return SemanticSimilarityFastText.normalize(SemanticSimilarityFastText.averageVector(tokens(names), tokenVectors));
+    }
+}
@@ -0,0 +1,205 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.models.xmi.json.ModelCorpus;
+import org.models.xmi.json.matrix.SimilarityMatrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The fastText similarity of the names of two models, normalized to [0, 1] as in {@link Similarity#semanticSimilarity}.
+ * <p>
+ * Each model is prepared as the unit length average vector of its names, so the cosine of a pair is a dot product.
+ * All the pairs are scored at once as the product V V^T of the matrix of the model vectors, computed by blocks of
+ * rows so that the vectors of a block stay in cache while they are multiplied with the vectors of another block.
+ * In {@link EmbeddingPrecision#INT8} the model vectors are rounded to signed bytes with a scale per vector, and the
+ * products are computed on the bytes in integer arithmetic, with a quarter of the memory of the float vectors.
+ */
+public class SemanticMeasure implements SimilarityMeasure<float[]> {
+    private final static Logger logger = LogManager.getLogger(SemanticMeasure.class);
+
+    public static final String NAME = "semantic";
+
+    // 64 vectors of 300 floats, 75 KB per block
+    private static final int BLOCK_SIZE = 64;
+
+    private final SemanticContext context;
+    private final EmbeddingPrecision precision;
+
+    // The model vectors in the precision of the word vectors of the context
+    public SemanticMeasure(SemanticContext context) {
+        this(context, context.getPrecision());
+    }
+
+    public SemanticMeasure(SemanticContext context, EmbeddingPrecision precision) {
+        this.context = context;
+        this.precision = precision;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public float[] prepare(ModelCorpus.Entry entry) {
+        try {
+            return prepare(entry.getNameList());
+        } catch (Exception e) {
+            logger.error("Error in calculating the vector of " + entry.getFileName(), e);
+            return new float[0];
+        }
+    }
+
+    // The prepared state of a model from its names
+    public float[] prepare(List<String> names) {
+        return round(context.normalizedModelVector(names));
+    }
+
+    // The model vector in the precision of the measure, so that score and scoreAll agree
+    public float[] round(float[] modelVector) {
+        return precision.round(modelVector);
+    }
+
+    @Override
+    public double score(float[] model1, float[] model2) {
+        double dot = 0.0;
+        for (int k = 0; k < Math.min(model1.length, model2.length); k++) {
+            dot += (double) model1[k] * model2[k];
+        }
+        return (1 + dot) / 2;
+    }
+
+    @Override
+    public boolean scoreAll(List<float[]> models, SimilarityMatrix matrix) {
+        int size = models.size();
+        int dimension = 0;
+        for (float[] model : models) {
+            if (model != null) {
+                dimension = Math.max(dimension, model.length);
+            }
+        }
+        if (precision == EmbeddingPrecision.INT8) {
+            scoreAllInt8(models, dimension, matrix);
+            return true;
+        }
+        // The vectors one after the other, zero for the models without one, whose cosines are then 0
+        float[] vectors = new float[size * dimension];
+        for (int i = 0; i < size; i++) {
+            if (models.get(i) != null) {
+                System.arraycopy(models.get(i), 0, vectors, i * dimension, models.get(i).length);
+            }
+        }
+
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int finalDimension = dimension;
+        // The blocks of the upper triangle, rowBlock <= colBlock, in parallel
+        IntStream.range(0, blocks * blocks).parallel()
+                .filter(tile -> tile / blocks <= tile % blocks)
+                .forEach(tile -> multiplyBlock(models, vectors, finalDimension, tile / blocks, tile % blocks, matrix));
+        return true;
+    }
+
+    // Two rows by two columns at a time, each value loaded from the block being used for two products
+    private static void multiplyBlock(List<float[]> models, float[] vectors, int dimension, int rowBlock, int colBlock, SimilarityMatrix matrix) {
+        int rowEnd = Math.min((rowBlock + 1) * BLOCK_SIZE, models.size());
+        int colEnd = Math.min((colBlock + 1) * BLOCK_SIZE, models.size());
+        double[] dots = new double[4];
+        for (int i = rowBlock * BLOCK_SIZE; i < rowEnd; i += 2) {
+            // The last row or column of an odd block is paired with itself
+            int i1 = Math.min(i + 1, rowEnd - 1);
+            for (int j = colBlock * BLOCK_SIZE; j < colEnd; j += 2) {
+                int j1 = Math.min(j + 1, colEnd - 1);
+                multiply(vectors, i * dimension, i1 * dimension, j * dimension, j1 * dimension, dimension, dots);
+                set(models, matrix, i, j, dots[0]);
+                set(models, matrix, i, j1, dots[1]);
+                set(models, matrix, i1, j, dots[2]);
+                set(models, matrix, i1, j1, dots[3]);
+            }
+        }
+    }
+
+    // The dot products of rows i0 and i1 with rows j0 and j1, in double precision
+    private static void multiply(float[] vectors, int i0, int i1, int j0, int j1, int dimension, double[] dots) {
+        double dot00 = 0.0;
+        double dot01 = 0.0;
+        double dot10 = 0.0;
+        double dot11 = 0.0;
+        for (int k = 0; k < dimension; k++) {
+            double x0 = vectors[i0 + k];
+            double x1 = vectors[i1 + k];
+            double y0 = vectors[j0 + k];
+            double y1 = vectors[j1 + k];
+            dot00 += x0 * y0;
+            dot01 += x0 * y1;
+            dot10 += x1 * y0;
+            dot11 += x1 * y1;
+        }
+        dots[0] = dot00;
+        dots[1] = dot01;
+        dots[2] = dot10;
+        dots[3] = dot11;
+    }
+
+    private static void scoreAllInt8(List<float[]> models, int dimension, SimilarityMatrix matrix) {
+        int size = models.size();
+        // The bytes of the vectors one after the other, and the scale of each, zero for the models without a vector
+        byte[] codes = new byte[size * dimension];
+        float[] scales = new float[size];
+        ByteBuffer encoded = ByteBuffer.allocate(EmbeddingPrecision.INT8.bytes(dimension)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size; i++) {
+            float[] model = models.get(i);
+            if (model != null && model.length == dimension && dimension > 0) {
+                EmbeddingPrecision.INT8.encode(model, encoded, 0);
+                scales[i] = encoded.getFloat(0) / 127;
+                System.arraycopy(encoded.array(), 4, codes, i * dimension, dimension);
+            }
+        }
+
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks * blocks).parallel()
+                .filter(tile -> tile / blocks <= tile % blocks)
+                .forEach(tile -> multiplyBlockInt8(models, codes, scales, dimension, tile / blocks, tile % blocks, matrix));
+    }
+
+    private static void multiplyBlockInt8(List<float[]> models, byte[] codes, float[] scales, int dimension, int rowBlock, int colBlock, SimilarityMatrix matrix) {
+        int rowEnd = Math.min((rowBlock + 1) * BLOCK_SIZE, models.size());
+        int colEnd = Math.min((colBlock + 1) * BLOCK_SIZE, models.size());
+        for (int i = rowBlock * BLOCK_SIZE; i < rowEnd; i += 2) {
+            int i1 = Math.min(i + 1, rowEnd - 1);
+            for (int j = colBlock * BLOCK_SIZE; j < colEnd; j += 2) {
+                int j1 = Math.min(j + 1, colEnd - 1);
+                // At most 127 * 127 per value, so an int holds the sums of vectors of up to 133143 values
+                int dot00 = 0;
+                int dot01 = 0;
+                int dot10 = 0;
+                int dot11 = 0;
+                for (int k = 0; k < dimension; k++) {
+                    int x0 = codes[i * dimension + k];
+                    int x1 = codes[i1 * dimension + k];
+                    int y0 = codes[j * dimension + k];
+                    int y1 = codes[j1 * dimension + k];
+                    dot00 += x0 * y0;
+                    dot01 += x0 * y1;
+                    dot10 += x1 * y0;
+                    dot11 += x1 * y1;
+                }
+                set(models, matrix, i, j, (double) dot00 * scales[i] * scales[j]);
+                set(models, matrix, i, j1, (double) dot01 * scales[i] * scales[j1]);
+                set(models, matrix, i1, j, (double) dot10 * scales[i1] * scales[j]);
+                set(models, matrix, i1, j1, (double) dot11 * scales[i1] * scales[j1]);
+            }
+        }
+    }
+
+    // Only the upper triangle is set, the products below the diagonal of a diagonal block are dropped
+    private static void set(List<float[]> models, SimilarityMatrix matrix, int i, int j, double dot) {
+        if (i <= j && models.get(i) != null && models.get(j) != null) {
+            matrix.set(i, j, (1 + dot) / 2);
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package org.models.xmi.json.similarityMeasure;
 
-import com.github.jfasttext.JFastText;
-
 import java.io.*;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -12,19 +11,17 @@ public class SemanticSimilarityFastText {
 
     private static final Logger logger = LogManager.getLogger(SemanticSimilarityFastText.class);
 
-    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+    // Left out of the names besides the "common_words_to_exclude", see SemanticContext
+    static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
             "_", "this", "instance", "impl", "imp", "sensor", "subsystem", "system",
             "sys", "sub", "single", "dual", "integration", "standard", "with",
             "functional", "devices", "hardware"
     ));
 
-    private static final JFastText FAST_TEXT = new JFastText();
-
-    static {
-        // Load the pre-trained FastText model
-        FAST_TEXT.loadModel("models/cc.en.300.bin");
-    }
+    // Words of at most 2 letters carry little meaning and are left out
+    static final int MINIMUM_TOKEN_LENGTH = 2;
 
+    public static final String FAST_TEXT_MODEL_PATH = "models/cc.en.300.bin";
 
     public static void main(String[] args) {
         String inputFilePath = "src/main/java/org/models/xmi/json/map_tab(Ripristinato automaticamente).CSV";
@@ -37,7 +34,7 @@ public class SemanticSimilarityFastText {
         }
 
         try {
-            calculateAndSaveSimilarities(listOfWordLists, outputFilePath);
+            calculateAndSaveSimilarities(SemanticContext.getDefault(), listOfWordLists, outputFilePath);
         } catch (IOException e) {
             System.err.println("Error writing results to CSV: " + e.getMessage());
         }
@@ -62,32 +59,47 @@ public class SemanticSimilarityFastText {
         return wordLists;
     }
 
-    private static void calculateAndSaveSimilarities(List<List<String>> wordLists, String outputFilePath) throws IOException {
+    private static void calculateAndSaveSimilarities(SemanticContext context, List<List<String>> wordLists, String outputFilePath) throws IOException {
         try (PrintWriter writer = new PrintWriter(new FileWriter(outputFilePath))) {
             writer.println("List1,List2,Similarity");
 
             for (int i = 0; i < wordLists.size(); i++) {
                 for (int j = i + 1; j < wordLists.size(); j++) {
-                    double similarity = calculateSemanticSimilarity(wordLists.get(i), wordLists.get(j));
+                    double similarity = calculateSemanticSimilarity(context, wordLists.get(i), wordLists.get(j));
                     writer.printf("\"%s\",\"%s\",\"%.4f\"%n", wordLists.get(i), wordLists.get(j), similarity);
                 }
             }
         }
     }
 
-    public static double calculateSemanticSimilarity(List<String> list1, List<String> list2) {
+    // The cosine of the model vectors of the two lists, as the semantic measure computes it
+    public static double calculateSemanticSimilarity(SemanticContext context, List<String> list1, List<String> list2) {
+        SemanticMeasure measure = new SemanticMeasure(context);
+        return 2 * measure.score(measure.prepare(list1), measure.prepare(list2)) - 1;
+    }
 
-        if (FAST_TEXT == null) {
-            logger.error("FastText model has not been loaded.");
-            return 0.0;
+    // The vector scaled to unit length, in single precision; empty when there is no vector or a zero one
+    static float[] normalize(Optional<double[]> vector) {
+        if (vector.isEmpty()) {
+            return new float[0];
         }
+        double norm = 0.0;
+        for (double value : vector.get()) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0.0) {
+            return new float[0];
+        }
+        float[] normalized = new float[vector.get().length];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = (float) (vector.get()[i] / norm);
+        }
+        return normalized;
+    }
 
-        List<String> cleanedList1 = cleanList(list1);
-        List<String> cleanedList2 = cleanList(list2);
-
-        Optional<double[]> vec1 = calculateAverageVector(cleanList(list1));
-        Optional<double[]> vec2 = calculateAverageVector(cleanList(list2));
-
+    // The similarity of two models from their model vectors, each model being averaged once instead of once per pair
+    public static double calculateSemanticSimilarity(Optional<double[]> vec1, Optional<double[]> vec2) {
         if (vec1.isEmpty()) {
             System.out.println("Vector for List1 is empty.");
         } 
@@ -100,37 +112,22 @@ public class SemanticSimilarityFastText {
                 .orElse(0.0);
     }
 
-    private static List<String> cleanList(List<String> list) {
-        return list.stream()
-                .map(SemanticSimilarityFastText::removeKeywords)
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toList());
-    }
-
-    private static String removeKeywords(String str) {
-        String cleanStr = str.replaceAll("[0-9]", "")
-                .replaceAll("[()]", "")
-                .replaceAll("_", " ")
-                .toLowerCase();
-
-        for (String keyword : KEYWORDS) {
-            cleanStr = cleanStr.replaceAll("\\b" + keyword + "\\b", "").trim();
-        }
-
-        return cleanStr.length() > 2 ? cleanStr : "";
-    }
-
-    private static Optional<double[]> calculateAverageVector(List<String> list) {
-        int vectorSize = FAST_TEXT.getVector("word").size();
-        double[] averageVector = new double[vectorSize];
+    // The average of the vectors of the words, empty when none of them has a vector
+    static Optional<double[]> averageVector(List<String> list, Function<String, float[]> tokenVectors) {
+        double[] averageVector = null;
+        int vectorSize = 0;
         int validWordCount = 0;
 
         for (String word : list) {
-            List<Float> wordVector = FAST_TEXT.getVector(word);
-            if (wordVector != null && !wordVector.isEmpty()) {
+            float[] wordVector = tokenVectors.apply(word);
+            if (wordVector.length > 0) {
+                if (averageVector == null) {
+                    vectorSize = wordVector.length;
+                    averageVector = new double[vectorSize];
+                }
                 validWordCount++;
                 for (int i = 0; i < vectorSize; i++) {
-                    averageVector[i] += wordVector.get(i);
+                    averageVector[i] += wordVector[i];
                 }
             }
         }
@@ -163,20 +160,23 @@ public class SemanticSimilarityFastText {
         return (norm1 == 0.0 || norm2 == 0.0) ? 0.0 : dotProduct / (norm1 * norm2);
     }
 
-    public static double singleWordSemanticSimilarity(String word1, String word2) {
+    public static double singleWordSemanticSimilarity(SemanticContext context, String word1, String word2) {
         try {
-            List<Float> vector1 = FAST_TEXT.getVector(word1);
-            List<Float> vector2 = FAST_TEXT.getVector(word2);
+            float[] vector1 = context.vector(word1);
+            float[] vector2 = context.vector(word2);
 
-            if (vector1 == null || vector2 == null || vector1.isEmpty() || vector2.isEmpty()) {
+            if (vector1.length == 0 || vector2.length == 0) {
                 System.err.println("Word not found in the FastText model: " + word1 + " or " + word2);
                 return 0.0;
             }
 
-            return cosineSimilarity(
-                    vector1.stream().mapToDouble(Float::doubleValue).toArray(),
-                    vector2.stream().mapToDouble(Float::doubleValue).toArray()
-            );
+            double[] values1 = new double[vector1.length];
+            double[] values2 = new double[vector2.length];
+            for (int i = 0; i < values1.length; i++) {
+                values1[i] = vector1[i];
+                values2[i] = vector2[i];
+            }
+            return cosineSimilarity(values1, values2);
         } catch (Exception e) {
             System.err.println("Error calculating similarity: " + e.getMessage());
             return 0.0;
@@ -3,10 +3,11 @@ package org.models.xmi.json.similarityMeasure;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.config.SimilarityConfig;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.builder.GraphTypeBuilder;
-import org.jgrapht.traverse.DepthFirstIterator;
 import org.models.xmi.json.Main;
+import org.models.xmi.json.ModelCorpus;
 import org.models.xmi.json.graphModel.*;
 import org.models.xmi.json.visualize.JGraphXVisualization;
 
@@ -16,7 +17,6 @@ import java.util.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static org.models.xmi.json.Main.loadConfiguration;
 import static org.models.xmi.json.Main.parseJsonFile;
 import org.models.xmi.json.similarityMeasure.SemanticSimilarityFastText;
 
@@ -50,7 +50,7 @@ public class Similarity {
                 file1 = file1.replace("aaxl2", "json");
 
                 JsonObject json1 = parseJsonFile(new File(file1));
-                MakeCompleteGraph.buildGraphStructure(json1.toString(), "model1");
+                MakeCompleteGraph.buildGraphStructure(json1, "model1");
                 i++;
             }
 
@@ -74,14 +74,11 @@ public class Similarity {
 
     public static double[] calculateComplete(JsonObject json1, JsonObject json2, String model1Name, String model2Name, double w_struct, double w_sem) {
         try {
-            Model model1 = MakeCompleteGraph.buildGraphStructure(json1.toString(), "model1");
-            Model model2 = MakeCompleteGraph.buildGraphStructure(json2.toString(), "model2");
+            CompactModelGraph g1 = CompactModelGraph.fromJson(json1);
+            CompactModelGraph g2 = CompactModelGraph.fromJson(json2);
 
-            Graph<Node, Connection> g1 = model1.getGraph();
-            Graph<Node, Connection> g2 = model2.getGraph();
-
-            // logger.info("Graph 1 nodes: " + g1.vertexSet().size() + ", edges: " + g1.edgeSet().size());
-            // logger.info("Graph 2 nodes: " + g2.vertexSet().size() + ", edges: " + g2.edgeSet().size());
+            // logger.info("Graph 1 nodes: " + g1.vertexCount() + ", edges: " + g1.edgeCount());
+            // logger.info("Graph 2 nodes: " + g2.vertexCount() + ", edges: " + g2.edgeCount());
 
             if (model1Name.equals(model2Name)) {
                 System.out.println("==========================================================================================");
@@ -89,8 +86,8 @@ public class Similarity {
                 System.out.println("Models have the same name: " + model1Name);
                 System.out.println("Model 1: " + json1);
                 System.out.println("Model 2: " + json2);
-                System.out.println("Graph 1 nodes: " + g1.vertexSet().size() + ", edges: " + g1.edgeSet().size());
-                System.out.println("Graph 2 nodes: " + g2.vertexSet().size() + ", edges: " + g2.edgeSet().size());
+                System.out.println("Graph 1 nodes: " + g1.vertexCount() + ", edges: " + g1.edgeCount());
+                System.out.println("Graph 2 nodes: " + g2.vertexCount() + ", edges: " + g2.edgeCount());
                 System.out.println("==========================================================================================");
                 System.out.println("==========================================================================================");
 
@@ -99,11 +96,13 @@ public class Similarity {
             // logger.info("Comparing complete graphs: " + model1Name + " and " + model2Name);
 
 
-            // JGraphXVisualization.VisualizeGraph(g1, model1Name);
-            // JGraphXVisualization.VisualizeGraph(g2, model2Name);
+            // JGraphXVisualization.VisualizeGraph(g1.toGraph(), model1Name);
+            // JGraphXVisualization.VisualizeGraph(g2.toGraph(), model2Name);
 
 
-            return compareGraphs(g1, g2, model1Name, model2Name, "complete", w_struct, w_sem, json1, json2);
+            double structural = structuralSimilarity(g1, g2, SimilarityConfig.getDefault());
+            return compareGraphs(g1, g2, model1Name, model2Name, "complete", structural, w_struct, w_sem, getNameListFromJSON(json1), getNameListFromJSON(json2),
+                    SemanticContext.getDefault());
 
         } catch (Exception e) {
             logger.error("Error calculating complete graph similarity", e);
@@ -111,36 +110,114 @@ public class Similarity {
         return new double[]{0.0, 0.0, 0.0};
     }
 
-    private static double[] compareGraphs(Graph<Node, Connection> g1, Graph<Node, Connection> g2, String model1Name, String model2Name, String graphType, double w_struct, double w_sem, JsonObject json1, JsonObject json2) throws IOException {
-        JsonObject config = loadConfiguration("src/main/resources/config_similarity_measure.json");
-        String compareMode = config.getString("compareMode");
-        double similarity;
+    // Same as above, on models already parsed by the corpus: nothing is read from disk nor rebuilt
+    public static double[] calculateComplete(ModelCorpus.Entry entry1, ModelCorpus.Entry entry2, SimilarityConfig config, SemanticContext context) {
+        double[] similarities = tryCalculateComplete(entry1, entry2, config, context);
+        return similarities != null ? similarities : new double[]{0.0, 0.0, 0.0};
+    }
+
+    // Same as above, but null if the comparison failed, for callers that keep the results, such as the pair store
+    public static double[] tryCalculateComplete(ModelCorpus.Entry entry1, ModelCorpus.Entry entry2, SimilarityConfig config, SemanticContext context) {
+        try {
+            double structural = tryStructuralSimilarity(entry1, entry2, config);
+            if (Double.isNaN(structural)) {
+                return null;
+            }
+            double semantic = semanticSimilarity(entry1, entry2, context);
+            return new double[]{structural, semantic, config.getWeightOfStructural() * structural + config.getWeightOfSemantic() * semantic};
+
+        } catch (Exception e) {
+            logger.error("Error calculating complete graph similarity", e);
+        }
+        return null;
+    }
 
-        Graph<Node, Connection> mcs = findMaximumCommonSubgraph(g1, g2);
-        //JGraphXVisualization.VisualizeGraph(mcs, "MCS");
-        logger.info("MCS nodes: " + mcs.vertexSet().size() + ", edges: " + mcs.edgeSet().size());
+    // Structural similarity alone, for callers that bound or skip the semantic part of a pair; 0 if it failed
+    public static double structuralSimilarity(ModelCorpus.Entry entry1, ModelCorpus.Entry entry2, SimilarityConfig config) {
+        double similarity = tryStructuralSimilarity(entry1, entry2, config);
+        return Double.isNaN(similarity) ? 0.0 : similarity;
+    }
+
+    // Same as above, but NaN if it failed
+    public static double tryStructuralSimilarity(ModelCorpus.Entry entry1, ModelCorpus.Entry entry2, SimilarityConfig config) {
+        try {
+            // The Weisfeiler-Lehman features were computed once per model when the corpus was loaded
+            if (config.getStructuralMeasure().equals("wl") && entry1.getWlFeatures() != null && entry2.getWlFeatures() != null) {
+                return entry1.getWlFeatures().similarity(entry2.getWlFeatures());
+            }
+            return structuralSimilarity(entry1.getGraph(), entry2.getGraph(), config);
+        } catch (Exception e) {
+            logger.error("Error calculating structural similarity", e);
+        }
+        return Double.NaN;
+    }
+
+    // Semantic similarity alone, normalized to [0, 1] as in calculateComplete, as the semantic measure scores it
+    public static double semanticSimilarity(ModelCorpus.Entry entry1, ModelCorpus.Entry entry2, SemanticContext context) {
+        SemanticMeasure measure = new SemanticMeasure(context);
+        return measure.score(measure.prepare(entry1), measure.prepare(entry2));
+    }
+
+    // The structural similarity of the two graphs from the size of their common subgraph, greedy or exact, or from
+    // their Weisfeiler-Lehman features; at most 1
+    static double structuralSimilarity(CompactModelGraph g1, CompactModelGraph g2, SimilarityConfig config) {
+        if (config.getStructuralMeasure().equals("wl")) {
+            return WLFeatures.of(g1, config.getWlIterations()).similarity(WLFeatures.of(g2, config.getWlIterations()));
+        }
+        // Two copies of a model up to the order of their nodes match completely, every formula giving 1; the root
+        // subtree hashes tell most other pairs apart in constant time
+        if (g1.edgeCount() > 0 && g1.isIsomorphicTo(g2)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Isomorphic graphs, graph similarity = 1.0");
+            }
+            return 1.0;
+        }
+        double similarity;
+        String compareMode = config.getCompareMode();
+
+        boolean[] commonEdges = config.getStructuralMeasure().equals("mcsplit")
+                ? McSplit.findCommonEdges(g1, g2, config.getMcsTimeBudgetMillis())
+                : findCommonEdges(g1, g2);
+        int mcsEdges = 0;
+        int mcsVertices = 0;
+        boolean[] mcsVertex = new boolean[g1.vertexCount()];
+        for (int e = 0; e < commonEdges.length; e++) {
+            if (commonEdges[e]) {
+                mcsEdges++;
+                if (!mcsVertex[g1.getEdgeSource(e)]) {
+                    mcsVertex[g1.getEdgeSource(e)] = true;
+                    mcsVertices++;
+                }
+                if (!mcsVertex[g1.getEdgeTarget(e)]) {
+                    mcsVertex[g1.getEdgeTarget(e)] = true;
+                    mcsVertices++;
+                }
+            }
+        }
+        //JGraphXVisualization.VisualizeGraph(findMaximumCommonSubgraph(g1.toGraph(), g2.toGraph()), "MCS");
+        logger.info("MCS nodes: " + mcsVertices + ", edges: " + mcsEdges);
         double nodeSimilarity = 0;
         double edgeSimilarity=0;
-        if (mcs.vertexSet().isEmpty()) {
+        if (mcsVertices == 0) {
             similarity = 0.0;
             System.out.println("MaximumCommonSubgraph = 0, graph similarity = 0.0");
         } else {
             switch (compareMode) {
                 case "max" -> {
-                    nodeSimilarity = (double) mcs.vertexSet().size() / Math.max(g1.vertexSet().size(), g2.vertexSet().size());
-                    edgeSimilarity = (double) mcs.edgeSet().size() / Math.max(g1.edgeSet().size(), g2.edgeSet().size());
+                    nodeSimilarity = (double) mcsVertices / Math.max(g1.vertexCount(), g2.vertexCount());
+                    edgeSimilarity = (double) mcsEdges / Math.max(g1.edgeCount(), g2.edgeCount());
                     similarity = (nodeSimilarity + edgeSimilarity) / 2;
                 }
                 case "min" -> {
-                    nodeSimilarity = (double) mcs.vertexSet().size() / Math.min(g1.vertexSet().size(), g2.vertexSet().size());
-                    edgeSimilarity = (double) mcs.edgeSet().size() / Math.min(g1.edgeSet().size(), g2.edgeSet().size());
+                    nodeSimilarity = (double) mcsVertices / Math.min(g1.vertexCount(), g2.vertexCount());
+                    edgeSimilarity = (double) mcsEdges / Math.min(g1.edgeCount(), g2.edgeCount());
                     similarity = (nodeSimilarity + edgeSimilarity) / 2;
                 }
                 case "average" -> {
-                    double nodeSimilarityMax = (double) mcs.vertexSet().size() / Math.max(g1.vertexSet().size(), g2.vertexSet().size());
-                    double edgeSimilarityMax = (double) mcs.edgeSet().size() / Math.max(g1.edgeSet().size(), g2.edgeSet().size());
-                    double nodeSimilarityMin = (double) mcs.vertexSet().size() / Math.min(g1.vertexSet().size(), g2.vertexSet().size());
-                    double edgeSimilarityMin = (double) mcs.edgeSet().size() / Math.min(g1.edgeSet().size(), g2.edgeSet().size());
+                    double nodeSimilarityMax = (double) mcsVertices / Math.max(g1.vertexCount(), g2.vertexCount());
+                    double edgeSimilarityMax = (double) mcsEdges / Math.max(g1.edgeCount(), g2.edgeCount());
+                    double nodeSimilarityMin = (double) mcsVertices / Math.min(g1.vertexCount(), g2.vertexCount());
+                    double edgeSimilarityMin = (double) mcsEdges / Math.min(g1.edgeCount(), g2.edgeCount());
                     nodeSimilarity = (nodeSimilarityMax + nodeSimilarityMin) / 2;
                     edgeSimilarity = (edgeSimilarityMax + edgeSimilarityMin) / 2;
                     similarity = (nodeSimilarity + edgeSimilarity) / 2;
@@ -154,12 +231,16 @@ public class Similarity {
             }
             logger.info("MaximumCommonSubgraph != 0, graph similarity = " + similarity);
         }
+        if (similarity > 1) {
+            similarity = 1;
+        }
+        return similarity;
+    }
+
+    private static double[] compareGraphs(CompactModelGraph g1, CompactModelGraph g2, String model1Name, String model2Name, String graphType, double similarity, double w_struct, double w_sem, List<String> nameList1FromJSON, List<String> nameList2FromJSON, SemanticContext context) throws IOException {
         List<String> nameList1 = getNameList(g1);
         List<String> nameList2 = getNameList(g2);
 
-        List<String> nameList1FromJSON = getNameListFromJSON(json1);
-        List<String> nameList2FromJSON = getNameListFromJSON(json2);
-        
         // logger.info("nameList1 = " + nameList1);
         // logger.info("nameList2 = " + nameList2);
 
@@ -167,7 +248,7 @@ public class Similarity {
         // logger.info("initial SemanticSimilarityFastText = " + semanticSimilarity);
         try {
             logger.info("Start try catch calculateSemanticSimilarity");
-            semanticSimilarity = SemanticSimilarityFastText.calculateSemanticSimilarity(nameList1FromJSON, nameList2FromJSON);
+            semanticSimilarity = SemanticSimilarityFastText.calculateSemanticSimilarity(context, nameList1FromJSON, nameList2FromJSON);
             System.out.println("Calculated Semantic Similarity: " + semanticSimilarity);
         } catch (Exception e) {
             e.printStackTrace();
@@ -190,9 +271,6 @@ public class Similarity {
 
     }
 
-        if (similarity > 1) {
-            similarity = 1;
-        }
         double averageSimilarity;
         double normalized_semanticSimilarity;
         normalized_semanticSimilarity = (1 + semanticSimilarity)/2;
@@ -205,70 +283,70 @@ public class Similarity {
     }
 
 
-    public static Graph<Node, Connection> findMaximumCommonSubgraph(Graph<Node, Connection> g1, Graph<Node, Connection> g2) throws IOException {
-        Set<Node> commonVertices = new HashSet<>();
-        Set<Connection> commonEdges = new HashSet<>();
-        Set<Node> g2Vertices = new HashSet<>(g2.vertexSet());
+    /**
+     * Greedy common subgraph of g1 and g2, with the nodes and edges of g1.
+     * <p>
+     * The nodes of g1 are taken in depth-first order while g2 has an unmatched node of the same category, then the
+     * edges of g1 between common nodes, in the order of g1, while g2 has an unmatched edge of the same type and
+     * endpoint categories. Only the counts of the unmatched nodes and edges of g2 matter, so they are kept per
+     * category and per edge signature and each comparison is linear in the size of the two graphs.
+     */
+    public static Graph<Node, Connection> findMaximumCommonSubgraph(Graph<Node, Connection> g1, Graph<Node, Connection> g2) {
+        boolean[] commonEdges = findCommonEdges(CompactModelGraph.of("model1", g1), CompactModelGraph.of("model2", g2));
+        return buildCommonSubgraph(g1, commonEdges);
+    }
+
+    // The edges of g1 in the greedy common subgraph, by edge index
+    static boolean[] findCommonEdges(CompactModelGraph g1, CompactModelGraph g2) {
         // Find common vertices
-        DepthFirstIterator<Node, Connection> g1It = new DepthFirstIterator<>(g1);
-        while (g1It.hasNext()) {
-            Node n1 = g1It.next();
-            Iterator<Node> g2Iterator = g2Vertices.iterator();
-            while (g2Iterator.hasNext()) {
-                Node n2 = g2Iterator.next();
-                if (n1.getCategory().equals(n2.getCategory())) {
-                    commonVertices.add(n1);
-                    g2Iterator.remove();
-                    break;
-                }
-            }
+        int[] unmatchedVertices = new int[Node.Category.values().length];
+        for (int v2 = 0; v2 < g2.vertexCount(); v2++) {
+            unmatchedVertices[g2.getCategoryCode(v2)]++;
         }
-
-        // Find common edges
-        Set<Connection> g1Edges = new HashSet<>(g1.edgeSet());
-        Set<Connection> g2Edges = new HashSet<>(g2.edgeSet());
-        for (Connection e1 : g1Edges) {
-            for (Iterator<Connection> g2Iterator = g2Edges.iterator(); g2Iterator.hasNext(); ) {
-                Connection e2 = g2Iterator.next();
-                if (e1.getType().equals(e2.getType())) {
-                    Node source1 = g1.getEdgeSource(e1);
-                    Node target1 = g1.getEdgeTarget(e1);
-                    Node source2 = g2.getEdgeSource(e2);
-                    Node target2 = g2.getEdgeTarget(e2);
-                    if (commonVertices.contains(source1) && commonVertices.contains(target1)
-                            && source1.getCategory().equals(source2.getCategory())
-                            && target1.getCategory().equals(target2.getCategory())) {
-                        commonEdges.add(e1);
-                        g2Iterator.remove();
-                        break;
-                    }
-                }
+        boolean[] commonVertices = new boolean[g1.vertexCount()];
+        for (int k = 0; k < g1.vertexCount(); k++) {
+            int v1 = g1.depthFirstNode(k);
+            if (unmatchedVertices[g1.getCategoryCode(v1)] > 0) {
+                unmatchedVertices[g1.getCategoryCode(v1)]--;
+                commonVertices[v1] = true;
             }
         }
 
-        // Build the maximum common subgraph
-        Graph<Node, Connection> mcs = GraphTypeBuilder.<Node, Connection>directed().edgeClass(Connection.class).buildGraph();
-        for (Node node : commonVertices) {
-            mcs.addVertex(node);
+        // Find common edges
+        int[] unmatchedEdges = new int[CategoryProfile.SIGNATURES];
+        for (int e2 = 0; e2 < g2.edgeCount(); e2++) {
+            unmatchedEdges[CategoryProfile.signature(g2, e2)]++;
         }
-        for (Connection edge : commonEdges) {
-            Node source = g1.getEdgeSource(edge);
-            Node target = g1.getEdgeTarget(edge);
-            if (mcs.containsVertex(source) && mcs.containsVertex(target)) {
-                mcs.addEdge(source, target, edge);
+        boolean[] commonEdges = new boolean[g1.edgeCount()];
+        for (int e1 = 0; e1 < g1.edgeCount(); e1++) {
+            if (!commonVertices[g1.getEdgeSource(e1)] || !commonVertices[g1.getEdgeTarget(e1)]) {
+                continue;
+            }
+            int signature = CategoryProfile.signature(g1, e1);
+            if (unmatchedEdges[signature] > 0) {
+                unmatchedEdges[signature]--;
+                commonEdges[e1] = true;
             }
         }
+        return commonEdges;
+    }
 
-        // Remove isolated nodes
-        Set<Node> isolatedNodes = new HashSet<>();
-        for (Node node : mcs.vertexSet()) {
-            if (mcs.edgesOf(node).isEmpty()) {
-                isolatedNodes.add(node);
+    // Builds the common subgraph from the edges of g1 with the given indexes and their ends, on copies so g1 can be
+    // shared between threads; the nodes without a common edge are left out as isolated
+    static Graph<Node, Connection> buildCommonSubgraph(Graph<Node, Connection> g1, boolean[] commonEdges) {
+        // Self loops as in the DefaultDirectedGraph of the models
+        Graph<Node, Connection> mcs = GraphTypeBuilder.<Node, Connection>directed().allowingSelfLoops(true).edgeClass(Connection.class).buildGraph();
+        Map<Node, Node> copies = new LinkedHashMap<>();
+        int e = 0;
+        for (Connection edge : g1.edgeSet()) {
+            if (commonEdges[e++]) {
+                Node source = copies.computeIfAbsent(g1.getEdgeSource(edge), Node::new);
+                Node target = copies.computeIfAbsent(g1.getEdgeTarget(edge), Node::new);
+                mcs.addVertex(source);
+                mcs.addVertex(target);
+                mcs.addEdge(source, target, new Connection(edge.getType()));
             }
         }
-        for (Node node : isolatedNodes) {
-            mcs.removeVertex(node);
-        }
         renameMcsNodes(mcs);
 
         return mcs;
@@ -290,6 +368,14 @@ public class Similarity {
         return nameList;
     }
 
+    public static List<String> getNameList(CompactModelGraph g) {
+        List<String> nameList = new ArrayList<>();
+        for (int v = 0; v < g.vertexCount(); v++) {
+            nameList.add(g.getNodeName(v));
+        }
+        return nameList;
+    }
+
     public static List<String> getNameListFromJSON(JsonObject jsonContent) {
         List<String> nameList = new ArrayList<>();
         extractNames(jsonContent, nameList);
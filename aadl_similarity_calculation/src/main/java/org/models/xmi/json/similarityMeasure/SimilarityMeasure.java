@@ -0,0 +1,39 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.models.xmi.json.ModelCorpus;
+import org.models.xmi.json.matrix.SimilarityMatrix;
+
+import java.util.List;
+
+/**
+ * A pairwise similarity of models, computed in two steps: {@link #prepare} derives what the measure needs from one
+ * model, once per model, and {@link #score} compares the prepared states of two models, once per pair.
+ * <p>
+ * Measures are created by {@link SimilarityMeasures} from the names listed in the "measures" configuration, and
+ * the engine scores all of them in a single sweep over the pairs, one matrix per measure. Both methods are called
+ * from several threads at once.
+ *
+ * @param <P> the prepared state of a model
+ */
+public interface SimilarityMeasure<P> {
+
+    // The name of the measure in the configuration, also used to name its matrix
+    String getName();
+
+    // The state the pairs of the model are scored from; only called for models that were loaded
+    P prepare(ModelCorpus.Entry entry);
+
+    // The similarity of two prepared models, in [0, 1], or NaN if they could not be compared
+    double score(P model1, P model2);
+
+    /**
+     * Score every pair of models at once, for measures that have a faster way than one pair at a time.
+     *
+     * @param models the prepared models, null for the models that were not loaded, whose pairs are left unset
+     * @param matrix the matrix of the measure over the same models
+     * @return whether the pairs were scored; if not, the engine calls {@link #score} for each pair
+     */
+    default boolean scoreAll(List<P> models, SimilarityMatrix matrix) {
+        return false;
+    }
+}
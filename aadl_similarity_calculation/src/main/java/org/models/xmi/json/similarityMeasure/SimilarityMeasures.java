@@ -0,0 +1,58 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.config.SimilarityConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Registry of the similarity measures by name. The built-in ones are "structural", the measure selected by
+ * "structuralMeasure", "semantic", the fastText similarity of the names, and "jaccard", the multiset Jaccard
+ * similarity of the node categories and edge signatures; others are added with {@link #register} before the run
+ * starts. The factories are given the configuration and the {@link SemanticContext} of the run.
+ */
+public final class SimilarityMeasures {
+
+    private static final Map<String, BiFunction<SimilarityConfig, SemanticContext, SimilarityMeasure<?>>> FACTORIES = new LinkedHashMap<>();
+
+    static {
+        register(StructuralMeasure.NAME, (config, context) -> new StructuralMeasure(config));
+        register(SemanticMeasure.NAME, (config, context) -> new SemanticMeasure(context));
+        register(JaccardDistance.NAME, (config, context) -> new JaccardDistance());
+    }
+
+    private SimilarityMeasures() {
+    }
+
+    public static synchronized void register(String name, BiFunction<SimilarityConfig, SemanticContext, SimilarityMeasure<?>> factory) {
+        if (FACTORIES.putIfAbsent(name, factory) != null) {
+            throw new IllegalArgumentException("A similarity measure is already registered as " + name);
+        }
+    }
+
+    public static synchronized Set<String> names() {
+        return Collections.unmodifiableSet(FACTORIES.keySet());
+    }
+
+    public static synchronized SimilarityMeasure<?> create(String name, SimilarityConfig config, SemanticContext context) {
+        BiFunction<SimilarityConfig, SemanticContext, SimilarityMeasure<?>> factory = FACTORIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown similarity measure: " + name + ", expected one of " + FACTORIES.keySet());
+        }
+        return factory.apply(config, context);
+    }
+
+    // The measures of the "measures" configuration, in its order
+    public static List<SimilarityMeasure<?>> create(SimilarityConfig config, SemanticContext context) {
+        List<SimilarityMeasure<?>> measures = new ArrayList<>();
+        for (String name : config.getMeasures()) {
+            measures.add(create(name, config, context));
+        }
+        return measures;
+    }
+}
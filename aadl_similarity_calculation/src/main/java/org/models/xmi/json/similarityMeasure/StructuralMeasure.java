@@ -0,0 +1,36 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.config.SimilarityConfig;
+import org.models.xmi.json.ModelCorpus;
+
+/**
+ * The structural similarity of {@link Similarity#tryStructuralSimilarity(ModelCorpus.Entry, ModelCorpus.Entry, SimilarityConfig)},
+ * NaN for a pair whose comparison failed.
+ * The graphs and Weisfeiler-Lehman features it reads are built by the corpus when the models are loaded, so the
+ * entry itself is the prepared state.
+ */
+public class StructuralMeasure implements SimilarityMeasure<ModelCorpus.Entry> {
+
+    public static final String NAME = "structural";
+
+    private final SimilarityConfig config;
+
+    public StructuralMeasure(SimilarityConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ModelCorpus.Entry prepare(ModelCorpus.Entry entry) {
+        return entry;
+    }
+
+    @Override
+    public double score(ModelCorpus.Entry model1, ModelCorpus.Entry model2) {
+        return Similarity.tryStructuralSimilarity(model1, model2, config);
+    }
+}
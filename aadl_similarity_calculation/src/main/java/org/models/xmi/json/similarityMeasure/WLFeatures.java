@@ -0,0 +1,125 @@
+package org.models.xmi.json.similarityMeasure;
+
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.graphModel.Connection;
+import org.models.xmi.json.graphModel.Node;
+
+import java.util.Arrays;
+
+/**
+ * Weisfeiler-Lehman subtree features of a model graph: how many times each label occurs after 0, 1, ..., h rounds
+ * of relabelling.
+ * <p>
+ * A node starts with its {@link Node.Category}; each round its new label hashes its label with the sorted
+ * (direction, {@link Connection.ConnectionType}, label) of its edges. Labels are 64-bit hashes, so the vectors of
+ * different models can be compared without a shared dictionary. The structural similarity of two models is the
+ * cosine of their count vectors, a merge of two sorted arrays.
+ */
+public final class WLFeatures {
+
+    // Sorted labels and their counts
+    private final long[] labels;
+    private final int[] counts;
+    private final double norm;
+
+    private WLFeatures(long[] labels, int[] counts) {
+        this.labels = labels;
+        this.counts = counts;
+        double squares = 0;
+        for (int count : counts) {
+            squares += (double) count * count;
+        }
+        this.norm = Math.sqrt(squares);
+    }
+
+    public static WLFeatures of(CompactModelGraph graph, int iterations) {
+        int vertexCount = graph.vertexCount();
+        // Every edge seen from both ends: the other end and a code of its direction and type
+        int[][] others = new int[vertexCount][];
+        int[][] edgeCodes = new int[vertexCount][];
+        for (int v = 0; v < vertexCount; v++) {
+            others[v] = new int[graph.degree(v)];
+            edgeCodes[v] = new int[others[v].length];
+            int e = 0;
+            for (int k = graph.outStart(v); k < graph.outEnd(v); k++) {
+                others[v][e] = graph.getEdgeTarget(graph.outEdge(k));
+                edgeCodes[v][e++] = 2 * graph.getEdgeTypeCode(graph.outEdge(k));
+            }
+            for (int k = graph.inStart(v); k < graph.inEnd(v); k++) {
+                others[v][e] = graph.getEdgeSource(graph.inEdge(k));
+                edgeCodes[v][e++] = 2 * graph.getEdgeTypeCode(graph.inEdge(k)) + 1;
+            }
+        }
+
+        long[] all = new long[vertexCount * (iterations + 1)];
+        long[] label = new long[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            label[v] = mix(graph.getCategoryCode(v) + 1);
+            all[v] = label[v];
+        }
+        for (int round = 1; round <= iterations; round++) {
+            long[] next = new long[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                long[] neighbourhood = new long[others[v].length];
+                for (int e = 0; e < neighbourhood.length; e++) {
+                    neighbourhood[e] = mix(label[others[v][e]] ^ (edgeCodes[v][e] + 1) * 0x9E3779B97F4A7C15L);
+                }
+                Arrays.sort(neighbourhood);
+                long hash = mix(label[v] ^ round);
+                for (long neighbour : neighbourhood) {
+                    hash = mix(hash * 0x100000001B3L + neighbour);
+                }
+                next[v] = hash;
+                all[round * vertexCount + v] = hash;
+            }
+            label = next;
+        }
+
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int k = 0; k < all.length; k++) {
+            if (k == 0 || all[k] != all[k - 1]) {
+                distinct++;
+            }
+        }
+        long[] labels = new long[distinct];
+        int[] counts = new int[distinct];
+        int d = -1;
+        for (int k = 0; k < all.length; k++) {
+            if (k == 0 || all[k] != all[k - 1]) {
+                labels[++d] = all[k];
+            }
+            counts[d]++;
+        }
+        return new WLFeatures(labels, counts);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Normalized WL subtree kernel: the cosine of the two label count vectors, in [0, 1]
+    public double similarity(WLFeatures other) {
+        if (norm == 0 || other.norm == 0) {
+            return 0.0;
+        }
+        double dot = 0;
+        for (int a = 0, b = 0; a < labels.length && b < other.labels.length; ) {
+            if (labels[a] < other.labels[b]) {
+                a++;
+            } else if (labels[a] > other.labels[b]) {
+                b++;
+            } else {
+                dot += (double) counts[a++] * other.counts[b++];
+            }
+        }
+        return Math.min(1.0, dot / (norm * other.norm));
+    }
+
+    public int size() {
+        return labels.length;
+    }
+}
@@ -0,0 +1,23 @@
+package org.models.xmi.json.similarityMeasure;
+
+/**
+ * Source of the word vectors of the semantic measure: the {@link FastTextModel} itself, or an {@link EmbeddingStore}
+ * exported from it. Implementations must be safe for concurrent lookups.
+ */
+public interface WordVectors {
+
+    int dimension();
+
+    // The vector of a token, an empty array when there is none
+    float[] vector(String token);
+
+    // The vector of a token into out, which holds dimension() values, false when there is none
+    default boolean vector(String token, float[] out) {
+        float[] vector = vector(token);
+        if (vector.length == 0) {
+            return false;
+        }
+        System.arraycopy(vector, 0, out, 0, vector.length);
+        return true;
+    }
+}
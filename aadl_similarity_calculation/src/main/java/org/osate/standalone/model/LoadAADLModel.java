@@ -25,7 +25,7 @@ import org.osate.aadl2.instance.*;
 import org.osate.aadl2.instantiation.InstantiateModel;
 import org.osate.aadl2.util.Aadl2ResourceFactoryImpl;
 import org.osate.xtext.aadl2.Aadl2StandaloneSetup;
-import org.utils.Utils;
+import org.utils.CommonWordRemover;
 
 import java.io.File;
 import java.nio.file.Paths;
@@ -173,14 +173,14 @@ public class LoadAADLModel implements IRawModelLoader {
                         EList<FeatureInstance> features = systemInstance.getAllFeatureInstances();
                         EList<FlowSpecificationInstance> flowSpecifications = systemInstance.getFlowSpecifications();
                         int validNameMinimumLength = configObj.getValidNameMinimumLength();
+                        CommonWordRemover commonWords = new CommonWordRemover(configObj.getCommon_words_to_exclude());
                         
                         
                         int i = 0;
                         // check 
                         while (spouriousModel && i < components.size()) {
                             ComponentInstance component = components.get(i);
-                            String componentName = Utils.replaceStringIgnoreCase(component.getFullName(),configObj.getCommon_words_to_exclude(), "");
-                            if (componentName.length() > validNameMinimumLength) {
+                            if (commonWords.remainingLength(component.getFullName()) > validNameMinimumLength) {
                                 // Fai qualcosa con l'oggetto Connection x
                                 spouriousModel = false;
                             }
@@ -198,8 +198,7 @@ public class LoadAADLModel implements IRawModelLoader {
                         i=0;
                         while (spouriousModel && i < features.size()) {
                             FeatureInstance feature = features.get(i);
-                            String featureName = Utils.replaceStringIgnoreCase(feature.getFullName(),configObj.getCommon_words_to_exclude(), "");
-                            if (featureName.length() > validNameMinimumLength) {
+                            if (commonWords.remainingLength(feature.getFullName()) > validNameMinimumLength) {
                                 // Fai qualcosa con l'oggetto Connection x
                                 spouriousModel = false;
                             }
@@ -208,8 +207,7 @@ public class LoadAADLModel implements IRawModelLoader {
                         i= 0;
                         while (spouriousModel && i < flowSpecifications.size()) {
                             FlowSpecificationInstance flowSpecification = flowSpecifications.get(i);
-                            String flowSpecificationName = Utils.replaceStringIgnoreCase(flowSpecification.getFullName(),configObj.getCommon_words_to_exclude(), "");
-                            if (flowSpecificationName.length() > validNameMinimumLength) {
+                            if (commonWords.remainingLength(flowSpecification.getFullName()) > validNameMinimumLength) {
                                 // Fai qualcosa con l'oggetto Connection x
                                 spouriousModel = false;
                             }
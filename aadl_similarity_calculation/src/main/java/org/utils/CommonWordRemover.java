@@ -0,0 +1,98 @@
+package org.utils;
+
+import java.util.List;
+
+/**
+ * Measures what is left of a name once the common words are removed from it, as
+ * {@link Utils#replaceStringIgnoreCase} removes them: each word in turn, in the order of the list, every
+ * non-overlapping occurrence in any case, anywhere in the name, so removing a word can join the letters of a later
+ * one. The words are taken literally.
+ * <p>
+ * Instead of one regular expression per word, the name is read once: each word has a KMP matcher, and the characters
+ * a matcher lets through, those not part of an occurrence of its word, are passed on to the matcher of the next word.
+ * A remover is safe for concurrent use.
+ */
+public final class CommonWordRemover {
+
+    private final char[][] words;
+    // The KMP failure function of each word: the length of the longest proper prefix of word[0..i] that is also
+    // a suffix of it
+    private final int[][] failures;
+
+    public CommonWordRemover(List<String> commonWords) {
+        this.words = new char[commonWords.size()][];
+        this.failures = new int[commonWords.size()][];
+        for (int k = 0; k < words.length; k++) {
+            char[] word = commonWords.get(k).toCharArray();
+            int[] failure = new int[word.length];
+            for (int i = 1, s = 0; i < word.length; i++) {
+                while (s > 0 && !sameIgnoringCase(word[i], word[s])) {
+                    s = failure[s - 1];
+                }
+                if (sameIgnoringCase(word[i], word[s])) {
+                    s++;
+                }
+                failure[i] = s;
+            }
+            words[k] = word;
+            failures[k] = failure;
+        }
+    }
+
+    // The length of the name without the common words
+    public int remainingLength(String name) {
+        // The characters of the input of each matcher that match the start of its word, held back until they are
+        // known not to be an occurrence
+        int[] states = new int[words.length];
+        int length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            length += feed(states, 0, name.charAt(i));
+        }
+        for (int k = 0; k < words.length; k++) {
+            int held = states[k];
+            states[k] = 0;
+            for (int i = 0; i < held; i++) {
+                length += feed(states, k + 1, words[k][i]);
+            }
+        }
+        return length;
+    }
+
+    // Pass a character to the matcher of word k; the number of characters let through by the last matcher
+    private int feed(int[] states, int k, char c) {
+        if (k == words.length) {
+            return 1;
+        }
+        char[] word = words[k];
+        if (word.length == 0) {
+            return feed(states, k + 1, c);
+        }
+        int[] failure = failures[k];
+        int length = 0;
+        int s = states[k];
+        while (s > 0 && !sameIgnoringCase(c, word[s])) {
+            // The held characters before the new longest match are not part of an occurrence; they equal the start
+            // of the word in any case, which the later matchers do not tell apart
+            int next = failure[s - 1];
+            for (int i = 0; i < s - next; i++) {
+                length += feed(states, k + 1, word[i]);
+            }
+            s = next;
+        }
+        if (sameIgnoringCase(c, word[s])) {
+            s++;
+            if (s == word.length) {
+                s = 0;
+            }
+        } else {
+            length += feed(states, k + 1, c);
+        }
+        states[k] = s;
+        return length;
+    }
+
+    // As the case insensitive matching of regular expressions, which only folds the case of US-ASCII letters
+    private static boolean sameIgnoringCase(char a, char b) {
+        return a == b || (a < 128 && b < 128 && Character.toLowerCase(a) == Character.toLowerCase(b));
+    }
+}
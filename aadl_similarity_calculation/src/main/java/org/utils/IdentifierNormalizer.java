@@ -0,0 +1,84 @@
+package org.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits the identifiers of models into lower case words, in a single pass over their characters and without regular
+ * expressions: at underscores and other separators, at digits, which are dropped, and at the case changes of
+ * camelCase and PascalCase, so "HTTPServer_2leftSensor" is split into "http", "server", "left" and "sensor".
+ * <p>
+ * Stopwords and words of at most {@code minimumLength} characters are dropped. The words are interned in a pool of
+ * the normalizer, so the same word of many names is one string. A normalizer is safe for concurrent use.
+ */
+public final class IdentifierNormalizer {
+
+    private final Set<String> stopwords;
+    private final int minimumLength;
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    /**
+     * @param stopwords     the words to drop, in any case; entries that are not a single word, like "_", match nothing
+     * @param minimumLength the words of at most this many characters are dropped too
+     */
+    public IdentifierNormalizer(Collection<String> stopwords, int minimumLength) {
+        Set<String> words = new HashSet<>();
+        for (String stopword : stopwords) {
+            words.add(stopword.toLowerCase(Locale.ROOT));
+        }
+        this.stopwords = Set.copyOf(words);
+        this.minimumLength = minimumLength;
+    }
+
+    public List<String> tokens(String identifier) {
+        List<String> tokens = new ArrayList<>();
+        tokens(identifier, tokens);
+        return tokens;
+    }
+
+    // Appends the words of the identifier to out
+    public void tokens(String identifier, Collection<String> out) {
+        int length = identifier.length();
+        char[] word = new char[length];
+        int wordLength = 0;
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = identifier.charAt(i);
+            if (!Character.isLetter(c)) {
+                wordLength = emit(word, wordLength, out);
+            } else {
+                // A word starts at an upper case letter after a lower case one, or at the last of a run of upper case
+                // letters followed by a lower case one
+                if (wordLength > 0 && Character.isUpperCase(c) && (Character.isLowerCase(previous)
+                        || Character.isUpperCase(previous) && i + 1 < length && Character.isLowerCase(identifier.charAt(i + 1)))) {
+                    wordLength = emit(word, wordLength, out);
+                }
+                word[wordLength++] = Character.toLowerCase(c);
+            }
+            previous = c;
+        }
+        emit(word, wordLength, out);
+    }
+
+    // The number of distinct words interned so far
+    public int poolSize() {
+        return pool.size();
+    }
+
+    // Adds the word to out unless it is filtered out; returns 0, the length of the next word
+    private int emit(char[] word, int wordLength, Collection<String> out) {
+        if (wordLength > minimumLength) {
+            String token = new String(word, 0, wordLength);
+            if (!stopwords.contains(token)) {
+                String interned = pool.putIfAbsent(token, token);
+                out.add(interned != null ? interned : token);
+            }
+        }
+        return 0;
+    }
+}
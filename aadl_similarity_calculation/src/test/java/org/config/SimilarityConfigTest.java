@@ -0,0 +1,59 @@
+package org.config;
+
+import junit.framework.TestCase;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+import java.io.FileReader;
+import java.util.List;
+
+public class SimilarityConfigTest extends TestCase {
+
+    public void testWeightGridOverride() throws Exception {
+        List<double[]> grid = SimilarityConfig.fromArgs(new String[]{"--weight_grid=0.1,0.2"}).getWeightGrid();
+        assertEquals(2, grid.size());
+        assertEquals(0.1, grid.get(0)[0], 0.0);
+        assertEquals(0.2, grid.get(1)[0], 0.0);
+        assertEquals(0.8, grid.get(1)[1], 1e-12);
+
+        grid = SimilarityConfig.fromArgs(new String[]{"--weight_grid=0.5"}).getWeightGrid();
+        assertEquals(1, grid.size());
+        assertEquals(0.5, grid.get(0)[0], 0.0);
+    }
+
+    public void testOverrideOfAnArrayIsAnArray() {
+        JsonValue current = Json.createArrayBuilder().add(0.3).add(0.7).build();
+        assertEquals(Json.createArrayBuilder().add(0.4).build(), SimilarityConfig.parseValue(current, "0.4"));
+        assertEquals(Json.createArrayBuilder().add(0.4).add(0.6).build(), SimilarityConfig.parseValue(current, "0.4,0.6"));
+    }
+
+    public void testOverrideKeepsTheTypeOfScalars() {
+        assertEquals(Json.createValue("1,2"), SimilarityConfig.parseValue(Json.createValue("max"), "1,2"));
+        assertEquals(Json.createValue(4), SimilarityConfig.parseValue(Json.createValue(2), "4"));
+        assertEquals(JsonValue.TRUE, SimilarityConfig.parseValue(null, "true"));
+        assertEquals(Json.createValue("structural,semantic"), SimilarityConfig.parseValue(null, "structural,semantic"));
+    }
+
+    public void testCommonWordsDefaultToThoseOfConfigJson() throws Exception {
+        // The key is not in the default configuration
+        List<String> words = SimilarityConfig.fromArgs(new String[0]).getCommonWordsToExclude();
+        assertTrue(words.contains("instance"));
+        assertEquals(SimilarityConfig.parseCommonWords(
+                Json.createReader(new FileReader(SimilarityConfig.COMMON_WORDS_CONFIG_PATH)).readObject().get("common_words_to_exclude")), words);
+        assertEquals(List.of("a", "b"),
+                SimilarityConfig.fromArgs(new String[]{"--common_words_to_exclude=a,b"}).getCommonWordsToExclude());
+    }
+
+    public void testCommonWordsOfAnotherTypeAreRejected() {
+        try {
+            SimilarityConfig.parseCommonWords(Json.createValue(5));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            SimilarityConfig.parseCommonWords(Json.createArrayBuilder().add("a").add(5).build());
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
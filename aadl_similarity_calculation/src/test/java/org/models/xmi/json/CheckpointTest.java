@@ -0,0 +1,113 @@
+package org.models.xmi.json;
+
+import junit.framework.TestCase;
+import org.config.SimilarityConfig;
+import org.models.xmi.json.matrix.SimilarityMatrix;
+import org.models.xmi.json.similarityMeasure.SemanticContext;
+import org.models.xmi.json.similarityMeasure.SimilarityMeasure;
+import org.models.xmi.json.similarityMeasure.SimilarityMeasures;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CheckpointTest extends TestCase {
+
+    private static final int TILE_SIZE = 3;
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("checkpoint").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    public void testResumeAfterAKillMidTileGivesTheSameFiles() throws Exception {
+        SimilarityConfig config = SimilarityConfig.fromArgs(new String[]{"--exportFormat=both", "--measures=structural,jaccard"});
+        File[] files = new File(CheckpointTest.class.getResource("/models").toURI()).listFiles((dir, name) -> name.endsWith(".json"));
+        Arrays.sort(files);
+        ModelCorpus corpus = ModelCorpus.load(Arrays.asList(files), config);
+        SemanticContext context = SemanticContext.of(config);
+        String fingerprint = Main.fingerprint(corpus, config, context);
+        File checkpointFile = new File(directory, "checkpoint.bin");
+
+        // The uninterrupted run
+        SimilarityMatrix[] matrices = createMatrices(config, corpus.size());
+        run(corpus, config, context, matrices, Checkpoint.open(checkpointFile.getPath(), fingerprint, false, corpus.size(), TILE_SIZE, matrices, 0));
+        File uninterrupted = export(matrices, corpus, config, "uninterrupted");
+
+        // Killed while writing a tile: the file ends in the middle of its records
+        File killedFile = new File(directory, "killed.bin");
+        Files.copy(checkpointFile.toPath(), killedFile.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(killedFile, "rw")) {
+            raf.setLength(raf.length() / 2 + 5);
+        }
+        SimilarityMatrix[] resumedMatrices = createMatrices(config, corpus.size());
+        Checkpoint checkpoint = Checkpoint.open(killedFile.getPath(), fingerprint, true, corpus.size(), TILE_SIZE, resumedMatrices, 0);
+        int blocks = (corpus.size() + TILE_SIZE - 1) / TILE_SIZE;
+        int done = 0;
+        for (int row = 0; row < blocks; row++) {
+            for (int col = row; col < blocks; col++) {
+                done += checkpoint.isDone(row, col) ? 1 : 0;
+            }
+        }
+        assertTrue(done > 0 && done < blocks * (blocks + 1) / 2);
+        run(corpus, config, context, resumedMatrices, checkpoint);
+        File resumed = export(resumedMatrices, corpus, config, "resumed");
+
+        String[] names = uninterrupted.list();
+        Arrays.sort(names);
+        assertTrue(names.length >= 6);
+        for (String name : names) {
+            assertTrue(name, Arrays.equals(Files.readAllBytes(new File(uninterrupted, name).toPath()),
+                    Files.readAllBytes(new File(resumed, name).toPath())));
+        }
+        // The resumed checkpoint is complete too
+        assertEquals(checkpointFile.length(), killedFile.length());
+    }
+
+    private static SimilarityMatrix[] createMatrices(SimilarityConfig config, int size) throws Exception {
+        SimilarityMatrix[] matrices = new SimilarityMatrix[config.getMeasures().size()];
+        for (int m = 0; m < matrices.length; m++) {
+            matrices[m] = Main.createMatrix(config, config.getMeasures().get(m), size);
+        }
+        return matrices;
+    }
+
+    // The sweep of Main over the measures of the configuration, into the matrices the checkpoint was opened with
+    private static void run(ModelCorpus corpus, SimilarityConfig config, SemanticContext context, SimilarityMatrix[] matrices, Checkpoint checkpoint) throws Exception {
+        List<PreparedMeasure<?>> measures = new ArrayList<>();
+        for (SimilarityMeasure<?> measure : SimilarityMeasures.create(config, context)) {
+            measures.add(PreparedMeasure.prepare(measure, corpus));
+        }
+        Main.calculateSimilarities(corpus, measures, matrices, config, new PairScheduler(TILE_SIZE, 4), null, checkpoint);
+        checkpoint.close();
+    }
+
+    private File export(SimilarityMatrix[] matrices, ModelCorpus corpus, SimilarityConfig config, String name) throws Exception {
+        File output = new File(directory, name);
+        assertTrue(output.mkdir());
+        for (int m = 0; m < matrices.length; m++) {
+            Main.exportMatrix(matrices[m], new File(output, config.getMeasures().get(m) + ".csv").getPath(), corpus.getModelNames(), config, true);
+        }
+        return output;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,28 @@
+package org.models.xmi.json;
+
+import junit.framework.TestCase;
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.similarityMeasure.MinHashSignature;
+
+import javax.json.JsonObject;
+import java.util.List;
+
+public class LshIndexTest extends TestCase {
+
+    public void testOversizedBucketsAreSkipped() throws Exception {
+        List<JsonObject> models = SampleModels.load();
+        MinHashSignature first = MinHashSignature.of(CompactModelGraph.fromJson(models.get(0)), 3, 32);
+        MinHashSignature second = MinHashSignature.of(CompactModelGraph.fromJson(models.get(1)), 3, 32);
+        // Five copies of the first model share every bucket, two copies of the second too
+        MinHashSignature[] signatures = {first, first, first, first, first, second, second};
+
+        LshIndex index = LshIndex.build(signatures, 8, 4, 4);
+        assertTrue(index.isCandidate(5, 6));
+        assertFalse(index.isCandidate(0, 1));
+        assertEquals(1, index.candidateCount());
+
+        index = LshIndex.build(signatures, 8, 4, 5);
+        assertTrue(index.isCandidate(0, 4));
+        assertEquals(10 + 1, index.candidateCount());
+    }
+}
@@ -0,0 +1,25 @@
+package org.models.xmi.json;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class PairResultStoreTest extends TestCase {
+
+    public void testResultsAreWrittenBeforeClose() throws Exception {
+        File file = File.createTempFile("pairs", ".csv");
+        file.deleteOnExit();
+        PairResultStore store = PairResultStore.open(file.getPath(), "key", 0);
+        store.put("a", "b", 0.25, 0.75);
+        // As if the run was killed here
+        assertEquals("key,a,b,0.25,0.75\n", Files.readString(file.toPath()));
+
+        PairResultStore reopened = PairResultStore.open(file.getPath(), "key", 0);
+        assertEquals(0.25, reopened.get("a", "b")[0], 0.0);
+        assertEquals(0.75, reopened.get("a", "b")[1], 0.0);
+        assertNull(PairResultStore.open(file.getPath(), "other", 0).get("a", "b"));
+        reopened.close();
+        store.close();
+    }
+}
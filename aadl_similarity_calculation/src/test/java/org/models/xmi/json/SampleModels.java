@@ -0,0 +1,40 @@
+package org.models.xmi.json;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The models of src/test/resources/models: AADL instance models of the public corpus converted to JSON by
+ * {@link JsonConverter}, small enough to be compared in every pair.
+ */
+public final class SampleModels {
+
+    private SampleModels() {
+    }
+
+    public static List<JsonObject> load() throws IOException {
+        File folder;
+        try {
+            folder = new File(SampleModels.class.getResource("/models").toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".json"));
+        Arrays.sort(files);
+        List<JsonObject> models = new ArrayList<>();
+        for (File file : files) {
+            try (JsonReader reader = Json.createReader(new FileReader(file))) {
+                models.add(reader.readObject());
+            }
+        }
+        return models;
+    }
+}
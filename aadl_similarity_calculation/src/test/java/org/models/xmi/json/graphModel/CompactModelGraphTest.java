@@ -0,0 +1,62 @@
+package org.models.xmi.json.graphModel;
+
+import junit.framework.TestCase;
+import org.jgrapht.Graph;
+import org.jgrapht.traverse.DepthFirstIterator;
+import org.models.xmi.json.SampleModels;
+
+import javax.json.JsonObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CompactModelGraph#fromJson} walks the JSON of a model on its own; it must give the graph
+ * {@link MakeCompleteGraph} builds, node for node and edge for edge, in the same order.
+ */
+public class CompactModelGraphTest extends TestCase {
+
+    public void testFromJsonMatchesMakeCompleteGraph() throws Exception {
+        for (JsonObject json : SampleModels.load()) {
+            String model = json.getString("name");
+            Graph<Node, Connection> graph = MakeCompleteGraph.buildGraphStructure(json, model).getGraph();
+            CompactModelGraph expected = CompactModelGraph.of(model, graph);
+            CompactModelGraph actual = CompactModelGraph.fromJson(json);
+
+            assertEquals(model, expected.vertexCount(), actual.vertexCount());
+            for (int v = 0; v < expected.vertexCount(); v++) {
+                assertEquals(model + " node " + v, expected.getCategory(v), actual.getCategory(v));
+                // The nodes of MakeCompleteGraph have their id appended to their name
+                assertEquals(model + " node " + v, expected.getNodeName(v), actual.getNodeName(v) + " (" + idOf(graph, v) + ")");
+                assertEquals(model + " depth-first node " + v, expected.depthFirstNode(v), actual.depthFirstNode(v));
+            }
+            assertEquals(model, expected.edgeCount(), actual.edgeCount());
+            for (int e = 0; e < expected.edgeCount(); e++) {
+                assertEquals(model + " edge " + e, expected.getEdgeSource(e), actual.getEdgeSource(e));
+                assertEquals(model + " edge " + e, expected.getEdgeTarget(e), actual.getEdgeTarget(e));
+                assertEquals(model + " edge " + e, expected.getEdgeType(e), actual.getEdgeType(e));
+            }
+        }
+    }
+
+    public void testDepthFirstOrderOfDepthFirstIterator() throws Exception {
+        for (JsonObject json : SampleModels.load()) {
+            String model = json.getString("name");
+            Graph<Node, Connection> graph = MakeCompleteGraph.buildGraphStructure(json, model).getGraph();
+            Map<Node, Integer> indexes = new HashMap<>();
+            for (Node node : graph.vertexSet()) {
+                indexes.put(node, indexes.size());
+            }
+            CompactModelGraph compact = CompactModelGraph.fromJson(json);
+            DepthFirstIterator<Node, Connection> iterator = new DepthFirstIterator<>(graph);
+            int k = 0;
+            while (iterator.hasNext()) {
+                assertEquals(model + " depth-first node " + k, (int) indexes.get(iterator.next()), compact.depthFirstNode(k++));
+            }
+            assertEquals(model, compact.vertexCount(), k);
+        }
+    }
+
+    private static int idOf(Graph<Node, Connection> graph, int v) {
+        return graph.vertexSet().stream().skip(v).findFirst().orElseThrow().getId();
+    }
+}
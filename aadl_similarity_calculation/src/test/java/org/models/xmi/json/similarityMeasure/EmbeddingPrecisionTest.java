@@ -0,0 +1,75 @@
+package org.models.xmi.json.similarityMeasure;
+
+import junit.framework.TestCase;
+
+public class EmbeddingPrecisionTest extends TestCase {
+
+    // The value of a half from the IEEE 754 definition, independently of fromHalf
+    private static double halfValue(int half) {
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        double value;
+        if (exponent == 0x1F) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else if (exponent == 0) {
+            value = Math.scalb((double) mantissa, -24);
+        } else {
+            value = Math.scalb((double) (1024 + mantissa), exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    public void testEveryHalfIsDecodedAndEncodedBack() {
+        for (int half = 0; half < 1 << 16; half++) {
+            float value = EmbeddingPrecision.fromHalf((short) half);
+            double expected = halfValue(half);
+            if (Double.isNaN(expected)) {
+                assertTrue(Float.isNaN(value));
+                short encoded = EmbeddingPrecision.toHalf(value);
+                assertEquals(0x7C00, encoded & 0x7C00);
+                assertTrue((encoded & 0x3FF) != 0);
+            } else {
+                assertEquals(Integer.toHexString(half), expected, (double) value, 0.0);
+                assertEquals(Integer.toHexString(half), (short) half, EmbeddingPrecision.toHalf(value));
+            }
+        }
+    }
+
+    public void testHalfwayValuesRoundToEven() {
+        // Each pair of consecutive finite positive halves, subnormals included; their midpoint is exactly a float
+        for (int half = 0; half < 0x7BFF; half++) {
+            float low = EmbeddingPrecision.fromHalf((short) half);
+            float high = EmbeddingPrecision.fromHalf((short) (half + 1));
+            float midpoint = (float) (((double) low + high) / 2);
+            assertEquals((double) low + high, 2.0 * midpoint, 0.0);
+            short even = (short) ((half & 1) == 0 ? half : half + 1);
+            assertEquals(Integer.toHexString(half), even, EmbeddingPrecision.toHalf(midpoint));
+            assertEquals((short) half, EmbeddingPrecision.toHalf(Math.nextDown(midpoint)));
+            assertEquals((short) (half + 1), EmbeddingPrecision.toHalf(Math.nextUp(midpoint)));
+            assertEquals((short) (0x8000 | even), EmbeddingPrecision.toHalf(-midpoint));
+        }
+    }
+
+    public void testBoundaries() {
+        // Half of the smallest subnormal, 2^-25, is a tie with zero
+        assertEquals((short) 0, EmbeddingPrecision.toHalf(0x1p-25f));
+        assertEquals((short) 1, EmbeddingPrecision.toHalf(Math.nextUp(0x1p-25f)));
+        assertEquals((short) 0, EmbeddingPrecision.toHalf(Float.MIN_VALUE));
+        assertEquals((short) 0x8000, EmbeddingPrecision.toHalf(-0.0f));
+        // The smallest normal
+        assertEquals((short) 0x0400, EmbeddingPrecision.toHalf(0x1p-14f));
+        assertEquals((short) 0x0400, EmbeddingPrecision.toHalf(Math.nextDown(0x1p-14f)));
+        assertEquals((short) 0x03FF, EmbeddingPrecision.toHalf(0x1p-14f - 0x1p-24f));
+        // 65504 is the largest half, 65520 the tie between it and the next power of two, rounded to infinity
+        assertEquals((short) 0x7BFF, EmbeddingPrecision.toHalf(65504f));
+        assertEquals((short) 0x7BFF, EmbeddingPrecision.toHalf(Math.nextDown(65520f)));
+        assertEquals((short) 0x7C00, EmbeddingPrecision.toHalf(65520f));
+        assertEquals((short) 0xFC00, EmbeddingPrecision.toHalf(-65520f));
+        assertEquals((short) 0x7C00, EmbeddingPrecision.toHalf(Float.MAX_VALUE));
+        assertEquals((short) 0x7C00, EmbeddingPrecision.toHalf(Float.POSITIVE_INFINITY));
+        assertEquals((short) 0xFC00, EmbeddingPrecision.toHalf(Float.NEGATIVE_INFINITY));
+        assertTrue(Float.isNaN(EmbeddingPrecision.fromHalf(EmbeddingPrecision.toHalf(Float.NaN))));
+        assertEquals(Float.POSITIVE_INFINITY, EmbeddingPrecision.fromHalf((short) 0x7C00));
+        assertEquals(Float.NEGATIVE_INFINITY, EmbeddingPrecision.fromHalf((short) 0xFC00));
+    }
+}
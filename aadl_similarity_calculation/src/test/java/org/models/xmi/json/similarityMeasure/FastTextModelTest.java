@@ -0,0 +1,98 @@
+package org.models.xmi.json.similarityMeasure;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Vectors of the tiny models of src/test/resources/fasttext, against those computed by generate.py from the
+ * byte-level algorithm of fastText, for a model with every bucket, a pruned one and one pruned of all its buckets.
+ */
+public class FastTextModelTest extends TestCase {
+
+    private static String path(String name) throws Exception {
+        return new File(FastTextModelTest.class.getResource("/fasttext/" + name).toURI()).getPath();
+    }
+
+    // The expected vector of each word, written as big endian float bits
+    private static Map<String, float[]> expected(String name) throws Exception {
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(new File(path(name)).toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            String[] values = fields[1].split(" ");
+            float[] vector = new float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                vector[i] = Float.intBitsToFloat(Integer.parseUnsignedInt(values[i], 16));
+            }
+            vectors.put(fields[0], vector);
+        }
+        return vectors;
+    }
+
+    private static void assertVectors(String model, String vectors) throws Exception {
+        FastTextModel fastText = FastTextModel.open(path(model));
+        Map<String, float[]> expected = expected(vectors);
+        assertEquals(15, expected.size());
+        float[] out = new float[fastText.dimension()];
+        for (Map.Entry<String, float[]> entry : expected.entrySet()) {
+            // Bit for bit, the same float operations in the same order
+            assertTrue(model + " " + entry.getKey(), Arrays.equals(entry.getValue(), fastText.vector(entry.getKey())));
+            fastText.wordVector(entry.getKey(), out);
+            assertTrue(Arrays.equals(entry.getValue(), out));
+        }
+    }
+
+    public void testVectorsOfAModelWithEveryBucket() throws Exception {
+        assertVectors("tiny.bin", "tiny.txt");
+    }
+
+    public void testVectorsOfAPrunedModel() throws Exception {
+        assertVectors("tiny_pruned.bin", "tiny_pruned.txt");
+    }
+
+    public void testVectorsOfAModelWithoutBuckets() throws Exception {
+        assertVectors("tiny_no_buckets.bin", "tiny_no_buckets.txt");
+    }
+
+    public void testEndOfSentenceHasNoNgrams() throws Exception {
+        FastTextModel fastText = FastTextModel.open(path("tiny.bin"));
+        float[] row = new float[fastText.dimension()];
+        fastText.row(0, row);
+        float[] out = new float[fastText.dimension()];
+        assertEquals(1, fastText.wordVector("</s>", out));
+        assertTrue(Arrays.equals(row, out));
+        assertTrue(fastText.wordVector("</s>x", out) > 1);
+    }
+
+    public void testUnpairedSurrogatesAreEncodedAsQuestionMarks() throws Exception {
+        FastTextModel fastText = FastTextModel.open(path("tiny.bin"));
+        for (String word : new String[]{"\uD800ab", "a\uDC00b", "ab\uD83D", "\uDE00\uD83D"}) {
+            String replaced = new String(word.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            assertTrue(Arrays.equals(fastText.vector(replaced), fastText.vector(word)));
+            assertTrue(Arrays.equals(FastTextModel.subwordBuckets(replaced, 3, 6, 101), FastTextModel.subwordBuckets(word, 3, 6, 101)));
+        }
+    }
+
+    public void testSubwordBucketsOfASupplementaryCharacter() {
+        // "<😀>": the 2 and 3 character n-grams, without "<" and ">" alone and without the lone character
+        int[] buckets = FastTextModel.subwordBuckets("😀", 2, 3, 1 << 30);
+        assertEquals(3, buckets.length);
+        assertEquals(Integer.remainderUnsigned(fnv("<😀"), 1 << 30), buckets[0]);
+        assertEquals(Integer.remainderUnsigned(fnv("<😀>"), 1 << 30), buckets[1]);
+        assertEquals(Integer.remainderUnsigned(fnv("😀>"), 1 << 30), buckets[2]);
+    }
+
+    // FNV-1a over the sign-extended UTF-8 bytes, as fastText hashes
+    private static int fnv(String ngram) {
+        int hash = 0x811C9DC5;
+        for (byte b : ngram.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        return hash;
+    }
+}
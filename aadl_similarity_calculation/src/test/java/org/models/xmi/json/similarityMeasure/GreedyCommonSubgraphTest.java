@@ -0,0 +1,168 @@
+package org.models.xmi.json.similarityMeasure;
+
+import junit.framework.TestCase;
+import org.config.SimilarityConfig;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.builder.GraphTypeBuilder;
+import org.jgrapht.traverse.DepthFirstIterator;
+import org.models.xmi.json.SampleModels;
+import org.models.xmi.json.graphModel.CompactModelGraph;
+import org.models.xmi.json.graphModel.Connection;
+import org.models.xmi.json.graphModel.MakeCompleteGraph;
+import org.models.xmi.json.graphModel.Node;
+
+import javax.json.JsonObject;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The counter-based greedy matcher of {@link Similarity} against the nested-loop matcher it replaced, kept below as
+ * the reference, on every pair of the sample models.
+ * <p>
+ * The reference walks the edges of g1 in the order of the graph, as the counter-based matcher does: in HashSet order
+ * the choice of the common edges, and so of their nodes, changed from run to run.
+ */
+public class GreedyCommonSubgraphTest extends TestCase {
+
+    private static final String[] COMPARE_MODES = {"max", "min", "average"};
+
+    public void testSameCommonSubgraphAsNestedLoops() throws Exception {
+        List<JsonObject> models = SampleModels.load();
+        for (JsonObject json1 : models) {
+            for (JsonObject json2 : models) {
+                Graph<Node, Connection> g1 = MakeCompleteGraph.buildGraphStructure(json1, "model1").getGraph();
+                Graph<Node, Connection> g2 = MakeCompleteGraph.buildGraphStructure(json2, "model2").getGraph();
+                String pair = json1.getString("name") + " / " + json2.getString("name");
+
+                Graph<Node, Connection> expected = referenceCommonSubgraph(g1, g2);
+                Graph<Node, Connection> actual = Similarity.findMaximumCommonSubgraph(g1, g2);
+                assertEquals(pair, nodeIds(expected), nodeIds(actual));
+                assertEquals(pair, edges(expected), edges(actual));
+            }
+        }
+    }
+
+    public void testSameStructuralSimilarityAsNestedLoops() throws Exception {
+        List<JsonObject> models = SampleModels.load();
+        for (String compareMode : COMPARE_MODES) {
+            SimilarityConfig config = SimilarityConfig.fromArgs(new String[]{"--compareMode=" + compareMode, "--structuralMeasure=greedy"});
+            for (JsonObject json1 : models) {
+                for (JsonObject json2 : models) {
+                    Graph<Node, Connection> g1 = MakeCompleteGraph.buildGraphStructure(json1, "model1").getGraph();
+                    Graph<Node, Connection> g2 = MakeCompleteGraph.buildGraphStructure(json2, "model2").getGraph();
+                    double expected = referenceSimilarity(g1, g2, referenceCommonSubgraph(g1, g2), compareMode);
+                    double actual = Similarity.structuralSimilarity(CompactModelGraph.fromJson(json1), CompactModelGraph.fromJson(json2), config);
+                    assertEquals(compareMode + ": " + json1.getString("name") + " / " + json2.getString("name"), expected, actual, 0.0);
+                }
+            }
+        }
+    }
+
+    // The former Similarity.findMaximumCommonSubgraph, without renaming the nodes of g1
+    private static Graph<Node, Connection> referenceCommonSubgraph(Graph<Node, Connection> g1, Graph<Node, Connection> g2) {
+        Set<Node> commonVertices = new HashSet<>();
+        Set<Connection> commonEdges = new LinkedHashSet<>();
+        Set<Node> g2Vertices = new HashSet<>(g2.vertexSet());
+        // Find common vertices
+        DepthFirstIterator<Node, Connection> g1It = new DepthFirstIterator<>(g1);
+        while (g1It.hasNext()) {
+            Node n1 = g1It.next();
+            Iterator<Node> g2Iterator = g2Vertices.iterator();
+            while (g2Iterator.hasNext()) {
+                Node n2 = g2Iterator.next();
+                if (n1.getCategory().equals(n2.getCategory())) {
+                    commonVertices.add(n1);
+                    g2Iterator.remove();
+                    break;
+                }
+            }
+        }
+
+        // Find common edges
+        Set<Connection> g1Edges = new LinkedHashSet<>(g1.edgeSet());
+        Set<Connection> g2Edges = new HashSet<>(g2.edgeSet());
+        for (Connection e1 : g1Edges) {
+            for (Iterator<Connection> g2Iterator = g2Edges.iterator(); g2Iterator.hasNext(); ) {
+                Connection e2 = g2Iterator.next();
+                if (e1.getType().equals(e2.getType())) {
+                    Node source1 = g1.getEdgeSource(e1);
+                    Node target1 = g1.getEdgeTarget(e1);
+                    Node source2 = g2.getEdgeSource(e2);
+                    Node target2 = g2.getEdgeTarget(e2);
+                    if (commonVertices.contains(source1) && commonVertices.contains(target1)
+                            && source1.getCategory().equals(source2.getCategory())
+                            && target1.getCategory().equals(target2.getCategory())) {
+                        commonEdges.add(e1);
+                        g2Iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Build the maximum common subgraph
+        Graph<Node, Connection> mcs = GraphTypeBuilder.<Node, Connection>directed().allowingSelfLoops(true).edgeClass(Connection.class).buildGraph();
+        for (Node node : commonVertices) {
+            mcs.addVertex(node);
+        }
+        for (Connection edge : commonEdges) {
+            Node source = g1.getEdgeSource(edge);
+            Node target = g1.getEdgeTarget(edge);
+            if (mcs.containsVertex(source) && mcs.containsVertex(target)) {
+                mcs.addEdge(source, target, edge);
+            }
+        }
+
+        // Remove isolated nodes
+        Set<Node> isolatedNodes = new HashSet<>();
+        for (Node node : mcs.vertexSet()) {
+            if (mcs.edgesOf(node).isEmpty()) {
+                isolatedNodes.add(node);
+            }
+        }
+        for (Node node : isolatedNodes) {
+            mcs.removeVertex(node);
+        }
+        return mcs;
+    }
+
+    // The former scoring of compareGraphs
+    private static double referenceSimilarity(Graph<Node, Connection> g1, Graph<Node, Connection> g2, Graph<Node, Connection> mcs, String compareMode) {
+        if (mcs.vertexSet().isEmpty()) {
+            return 0.0;
+        }
+        double mcsVertices = mcs.vertexSet().size();
+        double mcsEdges = mcs.edgeSet().size();
+        int maxVertices = Math.max(g1.vertexSet().size(), g2.vertexSet().size());
+        int maxEdges = Math.max(g1.edgeSet().size(), g2.edgeSet().size());
+        int minVertices = Math.min(g1.vertexSet().size(), g2.vertexSet().size());
+        int minEdges = Math.min(g1.edgeSet().size(), g2.edgeSet().size());
+        double similarity = switch (compareMode) {
+            case "max" -> (mcsVertices / maxVertices + mcsEdges / maxEdges) / 2;
+            case "min" -> (mcsVertices / minVertices + mcsEdges / minEdges) / 2;
+            default -> ((mcsVertices / maxVertices + mcsVertices / minVertices) / 2
+                    + (mcsEdges / maxEdges + mcsEdges / minEdges) / 2) / 2;
+        };
+        return Math.min(similarity, 1.0);
+    }
+
+    private static Set<Integer> nodeIds(Graph<Node, Connection> graph) {
+        Set<Integer> ids = new HashSet<>();
+        for (Node node : graph.vertexSet()) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    // Each edge as its source and target ids and type
+    private static Set<String> edges(Graph<Node, Connection> graph) {
+        Set<String> edges = new HashSet<>();
+        for (Connection edge : graph.edgeSet()) {
+            edges.add(graph.getEdgeSource(edge).getId() + " " + graph.getEdgeTarget(edge).getId() + " " + edge.getType());
+        }
+        return edges;
+    }
+}
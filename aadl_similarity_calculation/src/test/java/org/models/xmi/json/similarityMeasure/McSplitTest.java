@@ -0,0 +1,183 @@
+package org.models.xmi.json.similarityMeasure;
+
+import junit.framework.TestCase;
+import org.jgrapht.Graph;
+import org.jgrapht.alg.connectivity.ConnectivityInspector;
+import org.jgrapht.graph.AsUndirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.models.xmi.json.graphModel.Connection;
+import org.models.xmi.json.graphModel.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link McSplit} against a brute-force maximum common connected induced subgraph on small random graphs, and its
+ * time budget on graphs too large to be searched exhaustively.
+ */
+public class McSplitTest extends TestCase {
+
+    private static final Node.Category[] CATEGORIES = {Node.Category.process, Node.Category.thread, Node.Category.dataPort};
+    private static final Connection.ConnectionType[] TYPES = {Connection.ConnectionType.father, Connection.ConnectionType.feature, Connection.ConnectionType.connection};
+
+    public void testSameSizeAsBruteForce() {
+        Random random = new Random(42);
+        for (int pair = 0; pair < 300; pair++) {
+            Graph<Node, Connection> g1 = randomGraph(random, 2 + random.nextInt(6), 0.2 + 0.4 * random.nextDouble(), 1 + random.nextInt(3));
+            Graph<Node, Connection> g2 = randomGraph(random, 2 + random.nextInt(6), 0.2 + 0.4 * random.nextDouble(), 1 + random.nextInt(3));
+            int expected = bruteForceSize(g1, g2);
+            Graph<Node, Connection> mcs = McSplit.findMaximumCommonSubgraph(g1, g2, 0);
+            // A single matched node has no edge and is removed as isolated
+            assertEquals("pair " + pair, expected >= 2 ? expected : 0, mcs.vertexSet().size());
+            assertConnectedInduced(g1, mcs);
+        }
+    }
+
+    public void testTimeBudgetKeepsBestMappingFound() {
+        Random random = new Random(7);
+        Graph<Node, Connection> g1 = randomGraph(random, 120, 0.05, 1);
+        Graph<Node, Connection> g2 = randomGraph(random, 120, 0.05, 1);
+        long start = System.nanoTime();
+        Graph<Node, Connection> mcs = McSplit.findMaximumCommonSubgraph(g1, g2, 50);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 5_000);
+        assertTrue(mcs.vertexSet().size() >= 2);
+        assertConnectedInduced(g1, mcs);
+    }
+
+    // Nodes of the given number of categories, each ordered pair joined with the given probability by an edge of a random type
+    private static Graph<Node, Connection> randomGraph(Random random, int vertexCount, double density, int categoryCount) {
+        Graph<Node, Connection> graph = new DefaultDirectedGraph<>(Connection.class);
+        Node[] nodes = new Node[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            nodes[v] = new Node("n" + v, CATEGORIES[random.nextInt(categoryCount)]);
+            graph.addVertex(nodes[v]);
+        }
+        for (int u = 0; u < vertexCount; u++) {
+            for (int v = 0; v < vertexCount; v++) {
+                if (u != v && random.nextDouble() < density) {
+                    graph.addEdge(nodes[u], nodes[v], new Connection(TYPES[random.nextInt(TYPES.length)]));
+                }
+            }
+        }
+        return graph;
+    }
+
+    // The size of the largest mapping between nodes of the same category that keeps every edge, its type and every
+    // missing edge, and whose nodes are connected, by trying every partial mapping of the nodes of g1
+    private static int bruteForceSize(Graph<Node, Connection> g1, Graph<Node, Connection> g2) {
+        Node[] nodes1 = g1.vertexSet().toArray(new Node[0]);
+        Node[] nodes2 = g2.vertexSet().toArray(new Node[0]);
+        int[][] adjacency1 = adjacency(g1, nodes1);
+        int[][] adjacency2 = adjacency(g2, nodes2);
+        int[] mapping = new int[nodes1.length];
+        return extend(0, mapping, new boolean[nodes2.length], nodes1, nodes2, adjacency1, adjacency2);
+    }
+
+    private static int extend(int v, int[] mapping, boolean[] used, Node[] nodes1, Node[] nodes2, int[][] adjacency1, int[][] adjacency2) {
+        if (v == nodes1.length) {
+            return connected(mapping, adjacency1) ? mappedCount(mapping) : 0;
+        }
+        mapping[v] = -1;
+        int best = extend(v + 1, mapping, used, nodes1, nodes2, adjacency1, adjacency2);
+        for (int w = 0; w < nodes2.length; w++) {
+            if (used[w] || nodes1[v].getCategory() != nodes2[w].getCategory() || !consistent(v, w, mapping, adjacency1, adjacency2)) {
+                continue;
+            }
+            mapping[v] = w;
+            used[w] = true;
+            best = Math.max(best, extend(v + 1, mapping, used, nodes1, nodes2, adjacency1, adjacency2));
+            used[w] = false;
+        }
+        mapping[v] = -1;
+        return best;
+    }
+
+    private static boolean consistent(int v, int w, int[] mapping, int[][] adjacency1, int[][] adjacency2) {
+        for (int u = 0; u < v; u++) {
+            if (mapping[u] >= 0 && (adjacency1[u][v] != adjacency2[mapping[u]][w] || adjacency1[v][u] != adjacency2[w][mapping[u]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mappedCount(int[] mapping) {
+        int count = 0;
+        for (int w : mapping) {
+            if (w >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Whether the mapped nodes of g1 are connected, ignoring the direction of the edges
+    private static boolean connected(int[] mapping, int[][] adjacency) {
+        int first = -1;
+        for (int v = 0; v < mapping.length && first < 0; v++) {
+            if (mapping[v] >= 0) {
+                first = v;
+            }
+        }
+        if (first < 0) {
+            return true;
+        }
+        boolean[] reached = new boolean[mapping.length];
+        int[] stack = new int[mapping.length];
+        int top = 0;
+        reached[first] = true;
+        stack[top++] = first;
+        int reachedCount = 1;
+        while (top > 0) {
+            int u = stack[--top];
+            for (int v = 0; v < mapping.length; v++) {
+                if (!reached[v] && mapping[v] >= 0 && (adjacency[u][v] != 0 || adjacency[v][u] != 0)) {
+                    reached[v] = true;
+                    stack[top++] = v;
+                    reachedCount++;
+                }
+            }
+        }
+        return reachedCount == mappedCount(mapping);
+    }
+
+    // The type of the edge from each node to each other, plus one, 0 for no edge
+    private static int[][] adjacency(Graph<Node, Connection> graph, Node[] nodes) {
+        Map<Node, Integer> indexes = new HashMap<>();
+        for (int v = 0; v < nodes.length; v++) {
+            indexes.put(nodes[v], v);
+        }
+        int[][] adjacency = new int[nodes.length][nodes.length];
+        for (Connection edge : graph.edgeSet()) {
+            adjacency[indexes.get(graph.getEdgeSource(edge))][indexes.get(graph.getEdgeTarget(edge))] = edge.getType().ordinal() + 1;
+        }
+        return adjacency;
+    }
+
+    // The common subgraph is connected and has every edge of g1 between its nodes
+    private static void assertConnectedInduced(Graph<Node, Connection> g1, Graph<Node, Connection> mcs) {
+        if (mcs.vertexSet().isEmpty()) {
+            return;
+        }
+        assertTrue(new ConnectivityInspector<>(new AsUndirectedGraph<>(mcs)).isConnected());
+        Map<Integer, Node> common = new HashMap<>();
+        for (Node node : mcs.vertexSet()) {
+            common.put(node.getId(), node);
+        }
+        int inducedEdges = 0;
+        for (Connection edge : g1.edgeSet()) {
+            Node source = common.get(g1.getEdgeSource(edge).getId());
+            Node target = common.get(g1.getEdgeTarget(edge).getId());
+            if (source != null && target != null) {
+                inducedEdges++;
+                Connection copy = mcs.getEdge(source, target);
+                assertNotNull(copy);
+                assertEquals(edge.getType(), copy.getType());
+            }
+        }
+        assertEquals(inducedEdges, mcs.edgeSet().size());
+    }
+}
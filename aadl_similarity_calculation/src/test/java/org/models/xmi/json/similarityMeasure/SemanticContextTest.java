@@ -0,0 +1,95 @@
+package org.models.xmi.json.similarityMeasure;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SemanticContextTest extends TestCase {
+
+    private static WordVectors tinyModel() throws Exception {
+        return FastTextModel.open(new File(SemanticContextTest.class.getResource("/fasttext/tiny.bin").toURI()).getPath());
+    }
+
+    public void testContextsWithOtherCommonWordsDoNotShareThem() throws Exception {
+        WordVectors model = tinyModel();
+        SemanticContext all = new SemanticContext(model, EmbeddingPrecision.FLOAT32, Collections.emptyList());
+        SemanticContext withoutControl = new SemanticContext(model, EmbeddingPrecision.FLOAT32, Collections.singletonList("Control"));
+        List<String> names = Arrays.asList("engineControl_sensor", "this_gps");
+
+        // "sensor" and "this" are keywords of both, "control" a common word of one
+        assertEquals(Arrays.asList("engine", "control", "gps"), all.tokens(names));
+        assertEquals(Arrays.asList("engine", "gps"), withoutControl.tokens(names));
+        assertEquals(Arrays.asList("engine", "control", "gps"), all.tokens(names));
+        assertFalse(Arrays.equals(all.normalizedModelVector(names), withoutControl.normalizedModelVector(names)));
+    }
+
+    public void testModelVectorIsTheUnitAverageOfTheTokenVectors() throws Exception {
+        WordVectors model = tinyModel();
+        SemanticContext context = new SemanticContext(model, EmbeddingPrecision.FLOAT32, Collections.emptyList());
+        float[] engine = model.vector("engine");
+        float[] control = model.vector("control");
+        double[] average = new double[engine.length];
+        double norm = 0.0;
+        for (int i = 0; i < average.length; i++) {
+            average[i] = ((double) engine[i] + control[i]) / 2;
+            norm += average[i] * average[i];
+        }
+        float[] vector = context.normalizedModelVector(Collections.singletonList("EngineControl"));
+        assertEquals(engine.length, vector.length);
+        for (int i = 0; i < vector.length; i++) {
+            assertEquals((float) (average[i] / Math.sqrt(norm)), vector[i], 0.0f);
+        }
+        // Only keywords and short words: no vector
+        assertEquals(0, context.normalizedModelVector(Arrays.asList("this_system", "a")).length);
+    }
+
+    public void testIdentityNamesTheStoreItsPrecisionAndTheWords() throws Exception {
+        WordVectors model = tinyModel();
+        Map<String, float[]> vectors = new HashMap<>();
+        vectors.put("engine", model.vector("engine"));
+        vectors.put("control", model.vector("control"));
+        File directory = Files.createTempDirectory("store").toFile();
+        try {
+            String float32 = identity(directory, "float32.bin", vectors, EmbeddingPrecision.FLOAT32, Collections.emptyList());
+            // The same vectors written again: the same store
+            assertEquals(float32, identity(directory, "copy.bin", vectors, EmbeddingPrecision.FLOAT32, Collections.emptyList()));
+            assertTrue(float32.startsWith("store-"));
+            assertTrue(float32.endsWith("-float32-words-float32"));
+            assertFalse(float32.equals(identity(directory, "int8.bin", vectors, EmbeddingPrecision.INT8, Collections.emptyList())));
+            vectors.remove("control");
+            assertFalse(float32.equals(identity(directory, "engine.bin", vectors, EmbeddingPrecision.FLOAT32, Collections.emptyList())));
+            String withoutControl = identity(directory, "float32.bin", null, EmbeddingPrecision.FLOAT32, Collections.singletonList("control"));
+            assertTrue(withoutControl.startsWith(float32));
+            assertFalse(float32.equals(withoutControl));
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    // The identity of a context over a store written with these vectors, or over the existing store when they are null
+    private static String identity(File directory, String name, Map<String, float[]> vectors, EmbeddingPrecision precision, List<String> commonWords) throws Exception {
+        String path = new File(directory, name).getPath();
+        if (vectors != null) {
+            EmbeddingStore.write(path, vectors, 4, null, precision);
+        }
+        return new SemanticContext(EmbeddingStore.open(path), EmbeddingPrecision.FLOAT32, commonWords).getIdentity();
+    }
+
+    public void testCachePrecisionIsThatOfTheContext() throws Exception {
+        WordVectors model = tinyModel();
+        SemanticContext context = new SemanticContext(model, EmbeddingPrecision.INT8, Collections.emptyList());
+        assertEquals(EmbeddingPrecision.INT8, context.getPrecision());
+        assertEquals(EmbeddingPrecision.INT8, context.getVectorCache().getPrecision());
+        assertTrue(Arrays.equals(EmbeddingPrecision.INT8.round(model.vector("engine")), context.vector("engine")));
+        assertSame(model, context.getWordVectors());
+    }
+}
@@ -0,0 +1,37 @@
+package org.utils;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class CommonWordRemoverTest extends TestCase {
+
+    private static final List<String> COMMON_WORDS = List.of("_", "this", "instance", "impl", "imp", "sensor",
+            "subsystem", "system", "sys", "sub");
+
+    public void testLengthIsThatOfTheOldRemoval() {
+        CommonWordRemover remover = new CommonWordRemover(COMMON_WORDS);
+        for (String name : new String[]{"", "speed_Sensor2", "THIS_instance", "SubSystemImpl", "ssubub", "Gpssystemub",
+                "xSysThistem", "impimpl", "motor_ctrl.impl"}) {
+            assertEquals(name, oldRemoval(name, COMMON_WORDS).length(), remover.remainingLength(name));
+        }
+        // Removing "system" joins "s" and "ub", then removed as "sub"
+        assertEquals("Gp".length(), remover.remainingLength("Gpssystemub"));
+    }
+
+    public void testOverlappingWords() {
+        List<String> words = List.of("aab", "abab", "");
+        CommonWordRemover remover = new CommonWordRemover(words);
+        for (String name : new String[]{"aaab", "ababab", "aAbAbaab", "aabab", "aaabb"}) {
+            assertEquals(name, oldRemoval(name, words).length(), remover.remainingLength(name));
+        }
+    }
+
+    // The removal of LoadAADLModel before CommonWordRemover
+    private static String oldRemoval(String name, List<String> words) {
+        for (String word : words) {
+            name = name.replaceAll("(?i)" + word, "");
+        }
+        return name;
+    }
+}
@@ -0,0 +1,85 @@
+# Writes the tiny fastText models of FastTextModelTest and the vectors fastText computes for a few words, from the
+# byte-level algorithm of fastText's Dictionary (FNV-1a over sign-extended UTF-8 bytes, n-grams of UTF-8 characters):
+#   python3 generate.py
+# tiny.bin has every bucket (pruneIndexSize -1), tiny_pruned.bin 40 of them, tiny_no_buckets.bin none (pruneIndexSize 0).
+import random
+import struct
+
+DIM, BUCKET, MINN, MAXN = 4, 101, 3, 6
+WORDS = ["</s>", "engine", "sensor", "données", "control", "a", "\U0001F600gps"]
+QUERIES = WORDS + ["engines", "motör", "zz", "", "✓ok", "x\U0001F600y", "\U0001F600", "</s>x"]
+
+
+def f32(x):
+    return struct.unpack('<f', struct.pack('<f', x))[0]
+
+
+def fnv(data):
+    h = 2166136261
+    for b in data:
+        h ^= (b - 256 if b > 127 else b) & 0xFFFFFFFF
+        h = (h * 16777619) & 0xFFFFFFFF
+    return h
+
+
+def buckets(word):
+    w = b"<" + word.encode("utf-8") + b">"
+    out = []
+    for i in range(len(w)):
+        if (w[i] & 0xC0) == 0x80:
+            continue
+        j, n, ngram = i, 1, b""
+        while j < len(w) and n <= MAXN:
+            ngram += w[j:j + 1]
+            j += 1
+            while j < len(w) and (w[j] & 0xC0) == 0x80:
+                ngram += w[j:j + 1]
+                j += 1
+            if n >= MINN and not (n == 1 and (i == 0 or j == len(w))):
+                out.append(fnv(ngram) % BUCKET)
+            n += 1
+    return out
+
+
+def write(path, prune, expected_path):
+    rng = random.Random(7)
+    nbuckets = BUCKET if prune is None else len(prune)
+    rows = [[f32(rng.uniform(-1, 1)) for _ in range(DIM)] for _ in range(len(WORDS) + nbuckets)]
+
+    def row_ids(word):
+        ids = [WORDS.index(word)] if word in WORDS else []
+        if word != "</s>":
+            for b in buckets(word):
+                if prune is None:
+                    ids.append(len(WORDS) + b)
+                elif b in prune:
+                    ids.append(len(WORDS) + prune[b])
+        return ids
+
+    with open(path, "wb") as out:
+        out.write(struct.pack('<ii', 793712314, 12))
+        out.write(struct.pack('<12id', DIM, 5, 5, 1, 5, 1, 1, 1, BUCKET, MINN, MAXN, 100, 1e-4))
+        out.write(struct.pack('<iiiqq', len(WORDS), len(WORDS), 0, 1000, -1 if prune is None else len(prune)))
+        for w in WORDS:
+            out.write(w.encode("utf-8") + b"\0" + struct.pack('<qb', 10, 0))
+        for b, k in (prune or {}).items():
+            out.write(struct.pack('<ii', b, k))
+        out.write(struct.pack('<?qq', False, len(rows), DIM))
+        for r in rows:
+            out.write(struct.pack('<%df' % DIM, *r))
+
+    with open(expected_path, "w", encoding="utf-8") as out:
+        for word in QUERIES:
+            ids = row_ids(word)
+            v = [0.0] * DIM
+            for r in ids:
+                v = [f32(v[k] + rows[r][k]) for k in range(DIM)]
+            if ids:
+                scale = f32(1.0 / len(ids))
+                v = [f32(x * scale) for x in v]
+            out.write(word + "\t" + " ".join(struct.pack('>f', x).hex() for x in v) + "\n")
+
+
+write("tiny.bin", None, "tiny.txt")
+write("tiny_pruned.bin", {b: k for k, b in enumerate(random.Random(11).sample(range(BUCKET), 40))}, "tiny_pruned.txt")
+write("tiny_no_buckets.bin", {}, "tiny_no_buckets.txt")